@@ -0,0 +1,118 @@
+package com.projectgalen.lib.jpa.utils.loadtest;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: InvalidationCheck.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.HibernateUtil;
+import com.projectgalen.lib.jpa.utils.base.CacheInvalidation;
+import com.projectgalen.lib.jpa.utils.base.LoopbackTransport;
+import com.projectgalen.lib.jpa.utils.base.SessionFactories;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Checks {@link CacheInvalidation} over a {@link LoopbackTransport} with two endpoints in the same group. The first is this node's and the second is
+ * a bare transport that records what it receives and can send it back. The entity cache is shared by the whole JVM so the other node is played by
+ * restarting this node's endpoint, which gives it a new node ID, and replaying what the first endpoint sent. It is run with the
+ * <code>loadtest</code> profile:
+ * <pre>
+ *     mvn -P loadtest test-compile exec:java -Dloadtest.main=com.projectgalen.lib.jpa.utils.loadtest.InvalidationCheck
+ * </pre>
+ * It exits with a non-zero status if a check fails.
+ */
+public final class InvalidationCheck {
+    private static final String GROUP = "invalidation-check";
+    private static final String QUERY = "where e.name = 'invalidation-1'";
+
+    private int failures = 0;
+
+    public InvalidationCheck() { }
+
+    public int run() throws IOException, InterruptedException {
+        LoopbackTransport peer  = new LoopbackTransport(GROUP);
+        List<byte[]>      inbox = new CopyOnWriteArrayList<>();
+
+        try {
+            SessionFactories.register(SessionFactories.DEFAULT, properties(), LoadItem.class);
+            new LoadItem("invalidation-1", "");
+            HibernateUtil.saveAll();
+
+            peer.open(inbox::add);
+            CacheInvalidation.start(new LoopbackTransport(GROUP), 1);
+
+            LoadItem item = fetch();
+            item.setPayload("changed");
+            item.saveChanges();
+            check("the other endpoint receives the save", await(inbox));
+            check("the saving node keeps its own copy", (fetch() == item) && (CacheInvalidation.getReceivedCount() == 0));
+
+            peer.send(inbox.get(0));
+            check("a node ignores messages sent with its own node ID", (fetch() == item) && (CacheInvalidation.getReceivedCount() == 0));
+
+            CacheInvalidation.start(new LoopbackTransport(GROUP), 1);
+            peer.send(inbox.get(0));
+            check("another node evicts the saved entity", (CacheInvalidation.getReceivedCount() == 1) && (fetch() != item));
+        }
+        finally {
+            CacheInvalidation.stop();
+            peer.close();
+            SessionFactories.closeAll();
+        }
+        return failures;
+    }
+
+    private void check(@NotNull String name, boolean passed) {
+        System.out.printf("%-4s %s%n", (passed ? "ok" : "FAIL"), name);
+        if(!passed) failures++;
+    }
+
+    /**
+     * Messages are sent after the transaction commits by the invalidation thread so this waits up to five seconds for one to arrive.
+     */
+    private static boolean await(@NotNull List<byte[]> inbox) throws InterruptedException {
+        for(int i = 0; (i < 500) && inbox.isEmpty(); i++) Thread.sleep(10);
+        return !inbox.isEmpty();
+    }
+
+    private static @NotNull LoadItem fetch() {
+        return HibernateUtil.fetch(LoadItem.class, QUERY, Map.of()).get(0);
+    }
+
+    private static @NotNull Properties properties() {
+        Properties props = new Properties();
+        props.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        props.setProperty("hibernate.connection.url", "jdbc:h2:mem:invalidation;DB_CLOSE_DELAY=-1");
+        props.setProperty("hibernate.connection.username", "sa");
+        props.setProperty("hibernate.connection.password", "");
+        props.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        return props;
+    }
+
+    public static void main(String... args) throws Exception {
+        System.exit((new InvalidationCheck().run() == 0) ? 0 : 1);
+    }
+}
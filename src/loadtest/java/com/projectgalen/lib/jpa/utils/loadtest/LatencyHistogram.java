@@ -0,0 +1,121 @@
+package com.projectgalen.lib.jpa.utils.loadtest;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: LatencyHistogram.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, log-linear histogram of latencies in nanoseconds that can be recorded into from many threads at once. Every power of two is split
+ * into 16 buckets so a reported percentile is at most about 6% above the true value.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB      = (1 << SUB_BITS);
+    private static final int DIRECT   = (SUB * 2);
+
+    private final AtomicLongArray counts = new AtomicLongArray(DIRECT + (64 * SUB));
+    private final AtomicLong      total  = new AtomicLong();
+    private final AtomicLong      sum    = new AtomicLong();
+    private final AtomicLong      max    = new AtomicLong();
+    private final AtomicLong      errors = new AtomicLong();
+
+    public LatencyHistogram() { }
+
+    public long getCount() {
+        return total.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    public double getMaxMillis() {
+        return toMillis(max.get());
+    }
+
+    public double getMeanMillis() {
+        long n = total.get();
+        return ((n == 0) ? 0 : toMillis(sum.get() / n));
+    }
+
+    /**
+     * Returns the latency, in milliseconds, below which the given fraction of the recorded values fall.
+     *
+     * @param fraction The fraction, for example 0.99 for the 99th percentile.
+     *
+     * @return The latency in milliseconds.
+     */
+    public double getPercentileMillis(double fraction) {
+        long n = total.get();
+        if(n == 0) return 0;
+
+        long target = Math.max(1, (long)Math.ceil(fraction * n));
+        long seen   = 0;
+
+        for(int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if(seen >= target) return toMillis(Math.min(getUpperBound(i), max.get()));
+        }
+        return toMillis(max.get());
+    }
+
+    public void record(long nanos) {
+        long v = Math.max(0, nanos);
+        counts.incrementAndGet(getIndex(v));
+        total.incrementAndGet();
+        sum.addAndGet(v);
+        max.accumulateAndGet(v, Math::max);
+    }
+
+    public void recordError() {
+        errors.incrementAndGet();
+    }
+
+    public @NotNull String toString() {
+        return String.format("count=%d p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms errors=%d", getCount(), getPercentileMillis(0.5), getPercentileMillis(0.99), getPercentileMillis(0.999), getMaxMillis(), getErrorCount());
+    }
+
+    /**
+     * Values below {@link #DIRECT} have a bucket each. Above that the bucket is chosen by the position of the highest set bit and the {@link #SUB_BITS}
+     * bits below it.
+     */
+    private static int getIndex(long v) {
+        if(v < DIRECT) return (int)v;
+        int shift = (63 - Long.numberOfLeadingZeros(v) - SUB_BITS);
+        return (DIRECT + ((shift - 1) * SUB) + (int)((v >>> shift) - SUB));
+    }
+
+    private static long getUpperBound(int index) {
+        if(index < DIRECT) return index;
+        int shift = (((index - DIRECT) / SUB) + 1);
+        return ((((long)((index - DIRECT) % SUB) + SUB + 1) << shift) - 1);
+    }
+
+    private static double toMillis(long nanos) {
+        return (nanos / (double)TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,74 @@
+package com.projectgalen.lib.jpa.utils.loadtest;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: LoadItem.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.base.JpaBase;
+import jakarta.persistence.*;
+
+/**
+ * The entity read and written by {@link LoadTest}. The IDs come from a pooled sequence rather than an identity column so that Hibernate can send the
+ * inserts as JDBC batches.
+ */
+@Entity
+@Table(name = "load_item")
+@SequenceGenerator(name = "load_item_seq", sequenceName = "load_item_seq", allocationSize = 50)
+public class LoadItem extends JpaBase<LoadItem> {
+    @Id @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "load_item_seq") @Column(name = "id") private long   id;
+    @Column(name = "name")                                                                                       private String name;
+    @Column(name = "payload", length = 4000)                                                                     private String payload;
+    @Version @Column(name = "version")                                                                           private long   version;
+
+    public LoadItem() {
+        super();
+    }
+
+    public LoadItem(String name, String payload) {
+        super(true);
+        this.name    = name;
+        this.payload = payload;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        setPersistedField("name", name);
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        setPersistedField("payload", payload);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,243 @@
+package com.projectgalen.lib.jpa.utils.loadtest;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: LoadTest.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.HibernateUtil;
+import com.projectgalen.lib.jpa.utils.base.SessionFactories;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A load generator that runs a mix of concurrent reads and writes through {@link HibernateUtil} against an in-memory H2 database and reports the
+ * throughput and latency percentiles of each operation. It is run with the <code>loadtest</code> profile:
+ * <pre>
+ *     mvn -P loadtest test-compile exec:java -Dloadtest.threads=32 -Dloadtest.virtual=true -Dloadtest.readRatio=0.9
+ * </pre>
+ * The settings are read from system properties:
+ * <ul>
+ *     <li><code>loadtest.threads</code> - The number of worker threads. (default 8)</li>
+ *     <li><code>loadtest.virtual</code> - true to run the workers on virtual threads. (default false)</li>
+ *     <li><code>loadtest.seconds</code> - How long to measure for. (default 30)</li>
+ *     <li><code>loadtest.warmup</code> - How long to run before measuring. (default 5)</li>
+ *     <li><code>loadtest.readRatio</code> - The fraction of operations that are reads. (default 0.8)</li>
+ *     <li><code>loadtest.rows</code> - The number of rows created before the run. (default 10000)</li>
+ *     <li><code>loadtest.batch</code> - The number of new entities saved by each <code>saveAll</code> and read by each <code>fetch</code>. (default 20)</li>
+ *     <li><code>loadtest.payload</code> - The size, in characters, of each row's payload. (default 200)</li>
+ *     <li><code>loadtest.label</code> - A label, such as the release, written with the results. (default none)</li>
+ *     <li><code>loadtest.out</code> - A CSV file the results are appended to so that runs can be compared. (default none)</li>
+ * </ul>
+ */
+public final class LoadTest {
+    private static final String[] OPERATIONS = { "fetch", "getFirst", "saveChanges", "saveAll" };
+
+    private final int                           threads;
+    private final boolean                       virtual;
+    private final int                           seconds;
+    private final int                           warmup;
+    private final double                        readRatio;
+    private final int                           rows;
+    private final int                           batch;
+    private final int                           payload;
+    private final String                        label;
+    private final String                        out;
+    private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+
+    private volatile boolean measuring = false;
+    private volatile long    maxId     = 0;
+
+    public LoadTest(@NotNull Properties props) {
+        threads   = Integer.parseInt(props.getProperty("loadtest.threads", "8"));
+        virtual   = Boolean.parseBoolean(props.getProperty("loadtest.virtual", "false"));
+        seconds   = Integer.parseInt(props.getProperty("loadtest.seconds", "30"));
+        warmup    = Integer.parseInt(props.getProperty("loadtest.warmup", "5"));
+        readRatio = Double.parseDouble(props.getProperty("loadtest.readRatio", "0.8"));
+        rows      = Integer.parseInt(props.getProperty("loadtest.rows", "10000"));
+        batch     = Integer.parseInt(props.getProperty("loadtest.batch", "20"));
+        payload   = Integer.parseInt(props.getProperty("loadtest.payload", "200"));
+        label     = props.getProperty("loadtest.label", "");
+        out       = props.getProperty("loadtest.out");
+        for(String op : OPERATIONS) histograms.put(op, new LatencyHistogram());
+    }
+
+    public @NotNull Map<String, LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    public void report(@NotNull PrintStream ps) {
+        ps.printf("threads=%d virtual=%b readRatio=%.2f rows=%d batch=%d payload=%d seconds=%d%n", threads, virtual, readRatio, rows, batch, payload, seconds);
+        ps.printf("%-12s %10s %10s %10s %10s %10s %10s %8s%n", "operation", "count", "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "errors");
+        histograms.forEach((op, h) -> ps.printf("%-12s %10d %10.1f %10.3f %10.3f %10.3f %10.3f %8d%n",
+                                                op,
+                                                h.getCount(),
+                                                (h.getCount() / (double)seconds),
+                                                h.getPercentileMillis(0.5),
+                                                h.getPercentileMillis(0.99),
+                                                h.getPercentileMillis(0.999),
+                                                h.getMaxMillis(),
+                                                h.getErrorCount()));
+    }
+
+    public void run() throws InterruptedException {
+        setUp();
+
+        long started = System.nanoTime();
+        long measure = (started + TimeUnit.SECONDS.toNanos(warmup));
+        long end     = (measure + TimeUnit.SECONDS.toNanos(seconds));
+
+        try(ExecutorService executor = (virtual ? Executors.newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(threads))) {
+            for(int i = 0; i < threads; i++) executor.execute(() -> work(end));
+            TimeUnit.NANOSECONDS.sleep(Math.max(0, (measure - System.nanoTime())));
+            measuring = true;
+        }
+        finally {
+            SessionFactories.closeAll();
+        }
+    }
+
+    public void writeCsv(@NotNull Path file) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        if(!Files.exists(file)) sb.append("time,label,threads,virtual,readRatio,rows,batch,payload,seconds,operation,count,opsPerSec,p50Ms,p99Ms,p999Ms,maxMs,errors\n");
+        String time = Instant.now().toString();
+        histograms.forEach((op, h) -> sb.append(String.format(Locale.ROOT,
+                                                              "%s,%s,%d,%b,%.2f,%d,%d,%d,%d,%s,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%d%n",
+                                                              time,
+                                                              label,
+                                                              threads,
+                                                              virtual,
+                                                              readRatio,
+                                                              rows,
+                                                              batch,
+                                                              payload,
+                                                              seconds,
+                                                              op,
+                                                              h.getCount(),
+                                                              (h.getCount() / (double)seconds),
+                                                              h.getPercentileMillis(0.5),
+                                                              h.getPercentileMillis(0.99),
+                                                              h.getPercentileMillis(0.999),
+                                                              h.getMaxMillis(),
+                                                              h.getErrorCount())));
+        Files.writeString(file, sb, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private @NotNull String newPayload() {
+        char[]            chars = new char[payload];
+        ThreadLocalRandom rnd   = ThreadLocalRandom.current();
+        for(int i = 0; i < chars.length; i++) chars[i] = (char)('a' + rnd.nextInt(26));
+        return new String(chars);
+    }
+
+    private long randomId() {
+        return (1 + ThreadLocalRandom.current().nextLong(Math.max(1, maxId)));
+    }
+
+    private void runOperation(@NotNull String op) {
+        switch(op) {
+            case "fetch" -> {
+                long from = randomId();
+                timed(op, () -> HibernateUtil.fetch(LoadItem.class, "where e.id between :from and :to order by e.id", Map.of("from", from, "to", (from + batch - 1))));
+            }
+            case "getFirst" -> {
+                long id = randomId();
+                timed(op, () -> HibernateUtil.getFirst(LoadItem.class, "where e.id = :id", Map.of("id", id)));
+            }
+            case "saveChanges" -> {
+                LoadItem item = HibernateUtil.getFirst(LoadItem.class, "where e.id = :id", Map.of("id", randomId()));
+                if(item != null) {
+                    item.setName("item-" + System.nanoTime());
+                    timed(op, item::saveChanges);
+                }
+            }
+            case "saveAll" -> {
+                for(int i = 0; i < batch; i++) new LoadItem("new-" + i, newPayload());
+                timed(op, HibernateUtil::saveAll);
+            }
+            default -> throw new IllegalArgumentException(op);
+        }
+    }
+
+    private void setUp() {
+        Properties props = new Properties();
+        props.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        props.setProperty("hibernate.connection.url", "jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000");
+        props.setProperty("hibernate.connection.username", "sa");
+        props.setProperty("hibernate.connection.password", "");
+        props.setProperty("hibernate.connection.pool_size", String.valueOf(Math.max(threads, 2)));
+        props.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        props.setProperty("hibernate.jdbc.batch_size", String.valueOf(Math.max(batch, 1)));
+        props.setProperty("hibernate.order_inserts", "true");
+        props.setProperty("hibernate.order_updates", "true");
+        SessionFactories.register(SessionFactories.DEFAULT, props, LoadItem.class);
+
+        for(int i = 1; i <= rows; i++) {
+            new LoadItem("item-" + i, newPayload());
+            if(((i % 1000) == 0) || (i == rows)) HibernateUtil.saveAll();
+        }
+        maxId = rows;
+    }
+
+    private void timed(@NotNull String op, @NotNull Runnable runnable) {
+        LatencyHistogram h       = histograms.get(op);
+        boolean          record  = measuring;
+        long             started = System.nanoTime();
+
+        try {
+            runnable.run();
+            if(record) h.record(System.nanoTime() - started);
+        }
+        catch(RuntimeException e) {
+            if(record) h.recordError();
+        }
+    }
+
+    private void work(long end) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        while(System.nanoTime() < end) {
+            boolean read = (rnd.nextDouble() < readRatio);
+            try {
+                runOperation(read ? OPERATIONS[rnd.nextInt(2)] : OPERATIONS[2 + rnd.nextInt(2)]);
+            }
+            catch(RuntimeException ignored) {
+                /* Failures in the untimed part of an operation aren't part of the results. */
+            }
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        LoadTest test = new LoadTest(System.getProperties());
+        test.run();
+        test.report(System.out);
+        if(test.out != null) test.writeCsv(Path.of(test.out));
+    }
+}
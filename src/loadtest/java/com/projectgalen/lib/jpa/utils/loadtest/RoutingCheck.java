@@ -0,0 +1,142 @@
+package com.projectgalen.lib.jpa.utils.loadtest;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: RoutingCheck.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.HibernateUtil;
+import com.projectgalen.lib.jpa.utils.base.QueryCache;
+import com.projectgalen.lib.jpa.utils.base.QueryPublisher;
+import com.projectgalen.lib.jpa.utils.base.ReadRouting;
+import com.projectgalen.lib.jpa.utils.base.SessionFactories;
+import com.projectgalen.lib.jpa.utils.enums.ReplicaSelection;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Checks {@link ReadRouting} against two in-memory H2 databases, a primary and a "replica" that never receives any of the primary's rows, so every
+ * read shows which of them it went to. It is run with the <code>loadtest</code> profile:
+ * <pre>
+ *     mvn -P loadtest test-compile exec:java -Dloadtest.main=com.projectgalen.lib.jpa.utils.loadtest.RoutingCheck
+ * </pre>
+ * It exits with a non-zero status if a check fails.
+ */
+public final class RoutingCheck {
+    private static final String REPLICA = "replica";
+    private static final String QUERY   = "where e.name like 'routing-%' order by e.id";
+
+    private int failures = 0;
+
+    public RoutingCheck() { }
+
+    public int run() {
+        try {
+            SessionFactories.register(SessionFactories.DEFAULT, properties("routing_primary"), LoadItem.class);
+            SessionFactories.register(REPLICA, properties("routing_replica"), LoadItem.class);
+            SessionFactories.prewarm().join();
+
+            for(int i = 1; i <= 3; i++) new LoadItem("routing-" + i, "");
+            HibernateUtil.saveAll();
+
+            ReadRouting.setReplicas(ReplicaSelection.ROUND_ROBIN, REPLICA);
+            QueryCache.setEnabled(true);
+            check("unpinned reads go to the replica", count() == 0);
+
+            ReadRouting.pin();
+            check("pinned reads go to the primary", count() == 3);
+            check("replica results were not put in the query cache", QueryCache.getSize() == 1);
+
+            ReadRouting.unpin();
+            check("the query cache holds the primary's results", count() == 3);
+
+            new LoadItem("routing-4", "");
+            HibernateUtil.saveAll();
+            check("a save pins the thread to the primary", ReadRouting.isPinned() && (count() == 4));
+            check("a pinned thread's publisher reads from the primary", published(true) == 4);
+            check("a pinned thread's single-session publisher reads from the primary", published(false) == 4);
+
+            ReadRouting.unpin();
+            check("reads go back to the replica once unpinned", count() == 0);
+            check("an unpinned thread's publisher reads from the replica", published(true) == 0);
+            check("an unpinned thread's single-session publisher reads from the replica", published(false) == 0);
+        }
+        finally {
+            ReadRouting.clearReplicas();
+            QueryCache.setEnabled(false);
+            SessionFactories.closeAll();
+        }
+        return failures;
+    }
+
+    private void check(@NotNull String name, boolean passed) {
+        System.out.printf("%-4s %s%n", (passed ? "ok" : "FAIL"), name);
+        if(!passed) failures++;
+    }
+
+    private static int count() {
+        return HibernateUtil.fetch(LoadItem.class, QUERY, Map.of()).size();
+    }
+
+    private static @NotNull Properties properties(@NotNull String database) {
+        Properties props = new Properties();
+        props.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        props.setProperty("hibernate.connection.url", String.format("jdbc:h2:mem:%s;DB_CLOSE_DELAY=-1", database));
+        props.setProperty("hibernate.connection.username", "sa");
+        props.setProperty("hibernate.connection.password", "");
+        props.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        return props;
+    }
+
+    /**
+     * Counts the rows delivered by a {@link QueryPublisher}, which reads them on the common pool rather than on this thread.
+     */
+    private static int published(boolean sessionPerChunk) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        new QueryPublisher<>(LoadItem.class, QUERY, Map.of()).withChunkSize(2).withSessionPerChunk(sessionPerChunk).subscribe(new Flow.Subscriber<>() {
+            private int count = 0;
+
+            public @Override void onComplete() {
+                result.complete(count);
+            }
+
+            public @Override void onError(Throwable t) {
+                result.completeExceptionally(t);
+            }
+
+            public @Override void onNext(LoadItem item) {
+                count++;
+            }
+
+            public @Override void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+        });
+        return result.join();
+    }
+
+    public static void main(String... args) {
+        System.exit((new RoutingCheck().run() == 0) ? 0 : 1);
+    }
+}
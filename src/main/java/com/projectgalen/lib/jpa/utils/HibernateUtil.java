@@ -22,7 +22,11 @@ package com.projectgalen.lib.jpa.utils;
 // IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
 // ===========================================================================
 
+import com.projectgalen.lib.jpa.utils.base.FetchPlan;
 import com.projectgalen.lib.jpa.utils.base.JpaBase;
+import com.projectgalen.lib.jpa.utils.base.ParallelScan;
+import com.projectgalen.lib.jpa.utils.base.QueryPublisher;
+import com.projectgalen.lib.jpa.utils.base.ReadAhead;
 import com.projectgalen.lib.jpa.utils.base.Utils;
 import com.projectgalen.lib.jpa.utils.interfaces.QueryConsumer;
 import com.projectgalen.lib.jpa.utils.interfaces.QueryFunction;
@@ -49,18 +53,34 @@ public final class HibernateUtil extends Utils {
         return stream(session, clazz, hql, params, startingRow, maxRows).collect(Collectors.toList());
     }
 
+    public static <E extends JpaBase<E>> @NotNull List<E> fetch(@NotNull Session session, @NotNull Class<E> clazz, @NotNull String hql, @NotNull Map<String, Object> params, int startingRow, int maxRows, @NotNull FetchPlan plan) {
+        return stream(session, clazz, hql, params, startingRow, maxRows, plan).collect(Collectors.toList());
+    }
+
     public static <E extends JpaBase<E>> @NotNull List<E> fetch(@NotNull Session session, @NotNull Class<E> clazz, @NotNull String hql, @NotNull Map<String, Object> params) {
         return fetch(session, clazz, hql, params, 0, 0);
     }
 
     public static <E extends JpaBase<E>> @NotNull List<E> fetch(@NotNull Class<E> clazz, @NotNull String hql, @NotNull Map<String, Object> params, int startingRow, int maxRows) {
-        return withSessionGet(session -> fetch(session, clazz, hql, params, startingRow, maxRows));
+        return withReadSessionGet(session -> fetch(session, clazz, hql, params, startingRow, maxRows));
     }
 
     public static <E extends JpaBase<E>> @NotNull List<E> fetch(@NotNull Class<E> clazz, @NotNull String hql, @NotNull Map<String, Object> params) {
         return fetch(clazz, hql, params, 0, 0);
     }
 
+    public static <E extends JpaBase<E>> @NotNull List<E> fetch(@NotNull Class<E> clazz, @NotNull String hql, @NotNull Map<String, Object> params, @NotNull FetchPlan plan) {
+        return withReadSessionGet(session -> fetch(session, clazz, hql, params, 0, 0, plan));
+    }
+
+    public static <E extends JpaBase<E>> @NotNull List<E> fetch(@NotNull String factoryName, @NotNull Class<E> clazz, @NotNull String hql, @NotNull Map<String, Object> params, int startingRow, int maxRows) {
+        return withReadSessionGet(factoryName, session -> fetch(session, clazz, hql, params, startingRow, maxRows));
+    }
+
+    public static <E extends JpaBase<E>> @NotNull List<E> fetch(@NotNull String factoryName, @NotNull Class<E> clazz, @NotNull String hql, @NotNull Map<String, Object> params) {
+        return fetch(factoryName, clazz, hql, params, 0, 0);
+    }
+
     public static <E extends JpaBase<E>> @Nullable E getFirst(@NotNull Session session, @NotNull Class<E> clazz, @NotNull String hql, @NotNull Map<String, Object> params, int startingRow) {
         return stream(session, clazz, hql, params, startingRow, 1).findFirst().orElse(null);
     }
@@ -70,25 +90,57 @@ public final class HibernateUtil extends Utils {
     }
 
     public static <E extends JpaBase<E>> @Nullable E getFirst(@NotNull Class<E> clazz, @NotNull String hql, @NotNull Map<String, Object> params, int startingRow) {
-        return withSessionGet(session -> getFirst(session, clazz, hql, params, startingRow));
+        return withReadSessionGet(session -> getFirst(session, clazz, hql, params, startingRow));
     }
 
     public static <E extends JpaBase<E>> @Nullable E getFirst(@NotNull Class<E> clazz, @NotNull String hql, @NotNull Map<String, Object> params) {
         return getFirst(clazz, hql, params, 0);
     }
 
+    public static <E extends JpaBase<E>> @Nullable E getFirst(@NotNull String factoryName, @NotNull Class<E> clazz, @NotNull String hql, @NotNull Map<String, Object> params, int startingRow) {
+        return withReadSessionGet(factoryName, session -> getFirst(session, clazz, hql, params, startingRow));
+    }
+
+    public static <E extends JpaBase<E>> @Nullable E getFirst(@NotNull String factoryName, @NotNull Class<E> clazz, @NotNull String hql, @NotNull Map<String, Object> params) {
+        return getFirst(factoryName, clazz, hql, params, 0);
+    }
+
     public static @Transient boolean isChildField(@NotNull Field f) {
         return (Reflection.hasAnyAnnotation(f, ManyToOne.class, OneToOne.class, OneToMany.class, ManyToMany.class) && JpaBase.class.isAssignableFrom(f.getType()));
     }
 
+    public static <E extends JpaBase<E>> @NotNull QueryPublisher<E> publish(@NotNull Class<E> clazz, @NotNull String hql, @NotNull Map<String, Object> params) {
+        return new QueryPublisher<>(clazz, hql, params);
+    }
+
+    public static <E extends JpaBase<E>> @NotNull QueryPublisher<E> publish(@NotNull Class<E> clazz, @NotNull String hql, @NotNull Map<String, Object> params, int chunkSize) {
+        return new QueryPublisher<E>(clazz, hql, params).withChunkSize(chunkSize);
+    }
+
+    public static <E extends JpaBase<E>> @NotNull Stream<E> readAhead(@NotNull Class<E> clazz, @NotNull String hql, @NotNull Map<String, Object> params, int pageSize, int depth) {
+        return ReadAhead.stream(clazz, hql, params, pageSize, depth);
+    }
+
     public static void saveAll() {
         withSessionDo(Utils::saveAll);
     }
 
+    public static void saveAll(@NotNull String factoryName) {
+        withSessionDo(factoryName, Utils::saveAll);
+    }
+
+    public static <E extends JpaBase<E>> @NotNull Stream<E> scan(@NotNull Class<E> clazz, @NotNull String where, @NotNull Map<String, Object> params, int parallelism, boolean ordered) {
+        return new ParallelScan<>(clazz, where, params).withParallelism(parallelism).stream(ordered);
+    }
+
     public static <E extends JpaBase<E>> @NotNull Stream<E> stream(@NotNull Session session, @NotNull Class<E> clazz, @NotNull String hql, @NotNull Map<String, Object> params) {
         return stream(session, clazz, hql, params, 0, 0);
     }
 
+    public static <E extends JpaBase<E>> @NotNull Stream<E> stream(@NotNull Session session, @NotNull Class<E> clazz, @NotNull String hql, @NotNull Map<String, Object> params, @NotNull FetchPlan plan) {
+        return stream(session, clazz, hql, params, 0, 0, plan);
+    }
+
     public static <E> void withQueryDo(@NotNull Class<E> cls, @NotNull String ql, @NotNull Map<String, Object> params, @NotNull QueryConsumer<E> function) {
         withQueryDo(cls, ql, params, 0, 0, function);
     }
@@ -32,4 +32,6 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface PGJPA {
     Class<? extends AbstractDao<?>> daoClass();
+
+    boolean preload() default false;
 }
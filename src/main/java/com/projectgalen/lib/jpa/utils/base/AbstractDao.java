@@ -22,16 +22,124 @@ package com.projectgalen.lib.jpa.utils.base;
 // IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
 // ===========================================================================
 
+import com.projectgalen.lib.jpa.utils.HibernateUtil;
+import org.hibernate.Session;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.*;
+import java.util.concurrent.Flow;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@SuppressWarnings({ "unchecked", "unused" })
 public class AbstractDao<T extends JpaBase> {
+    /**
+     * The number of rows sent to the database at a time by {@link #upsert(Session, Collection)}.
+     */
+    public static final int UPSERT_BATCH_SIZE = 100;
 
-    private final Class<T> entityClass;
+    private final Class<T>  entityClass;
+    private       FetchPlan fetchPlan = null;
 
     public AbstractDao(@NotNull Class<T> entityClass) {
         this.entityClass = entityClass;
     }
 
+    public int bulkDelete(@NotNull Session session, @NotNull String where, @NotNull Map<String, Object> params) {
+        return Utils.bulkDelete(session, entityClass, where, params);
+    }
+
+    public int bulkDelete(@NotNull String where, @NotNull Map<String, Object> params) {
+        return Utils.withSessionGet(session -> bulkDelete(session, where, params));
+    }
+
+    public int bulkUpdate(@NotNull Session session, @NotNull Map<String, Object> values, @NotNull String where, @NotNull Map<String, Object> params) {
+        return Utils.bulkUpdate(session, entityClass, values, where, params);
+    }
+
+    public int bulkUpdate(@NotNull Map<String, Object> values, @NotNull String where, @NotNull Map<String, Object> params) {
+        return Utils.withSessionGet(session -> bulkUpdate(session, values, where, params));
+    }
+
+    public long count(@NotNull Session session, @NotNull String where, @NotNull Map<String, Object> params) {
+        return Utils.count(session, entityClass, where, params);
+    }
+
+    public long count(@NotNull String where, @NotNull Map<String, Object> params) {
+        return Utils.withReadSessionGet(session -> count(session, where, params));
+    }
+
+    public long count() {
+        return count("", Collections.emptyMap());
+    }
+
+    public boolean exists(@NotNull Session session, @NotNull String where, @NotNull Map<String, Object> params) {
+        return Utils.exists(session, entityClass, where, params);
+    }
+
+    public boolean exists(@NotNull String where, @NotNull Map<String, Object> params) {
+        return Utils.withReadSessionGet(session -> exists(session, where, params));
+    }
+
+    public @NotNull List<T> fetch(@NotNull Session session, @NotNull String where, @NotNull Map<String, Object> params) {
+        return HibernateUtil.fetch(session, (Class)entityClass, where, params, 0, 0, getFetchPlan());
+    }
+
+    public @NotNull List<T> fetch(@NotNull String where, @NotNull Map<String, Object> params) {
+        return Utils.withReadSessionGet(session -> fetch(session, where, params));
+    }
+
+    /**
+     * Returns the entity with the given ID, taking it from the entity cache if it's there.
+     *
+     * @param session The JPA session to use.
+     * @param id      The ID values in the order of the {@link jakarta.persistence.Id} fields.
+     *
+     * @return The entity or null if it doesn't exist.
+     */
+    public @Nullable T findById(@NotNull Session session, @NotNull Object @NotNull ... id) {
+        return (T)Utils.fetchById(session, (Class)entityClass, List.of(id));
+    }
+
+    /**
+     * Returns the entity with the given ID. A session is only opened if the entity isn't already in the entity cache.
+     *
+     * @param id The ID values in the order of the {@link jakarta.persistence.Id} fields.
+     *
+     * @return The entity or null if it doesn't exist.
+     */
+    public @Nullable T findById(@NotNull Object @NotNull ... id) {
+        T cached = (T)Utils.locked(() -> Utils.getCached(SessionFactories.DEFAULT, (Class)entityClass, List.of(id)));
+        return ((cached == null) ? Utils.withReadSessionGet(session -> findById(session, id)) : cached);
+    }
+
+    /**
+     * Returns the entities with the given IDs. Cached entities are returned as they are and the rest are loaded in batches using the fetch plan of
+     * this DAO.
+     *
+     * @param session The JPA session to use.
+     * @param ids     The IDs. An entity class with more than one ID field takes a list of the ID values for each entity.
+     *
+     * @return The entities that exist, in the same order as the IDs.
+     */
+    public @NotNull List<T> findByIds(@NotNull Session session, @NotNull Collection<?> ids) {
+        return Utils.fetchByIds(session, (Class)entityClass, toIdLists(ids), getFetchPlan()).stream().filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * Returns the entities with the given IDs. A session is only opened if some of them aren't already in the entity cache.
+     *
+     * @param ids The IDs. An entity class with more than one ID field takes a list of the ID values for each entity.
+     *
+     * @return The entities that exist, in the same order as the IDs.
+     */
+    public @NotNull List<T> findByIds(@NotNull Collection<?> ids) {
+        List<List> idLists = toIdLists(ids);
+        List<T>    cached  = Utils.locked(() -> idLists.stream().map(i -> (T)Utils.getCached(SessionFactories.DEFAULT, (Class)entityClass, i)).toList());
+        return (cached.contains(null) ? Utils.withReadSessionGet(session -> findByIds(session, ids)) : cached);
+    }
+
     public @NotNull Class<T> getEntityClass() {
         return entityClass;
     }
@@ -39,4 +147,41 @@ public class AbstractDao<T extends JpaBase> {
     public @NotNull String getEntityName() {
         return getEntityClass().getSimpleName();
     }
+
+    /**
+     * Returns the fetch plan used by this DAO. If one has not been set then the default plan for the entity class is returned.
+     *
+     * @return The fetch plan.
+     */
+    public @NotNull FetchPlan getFetchPlan() {
+        return ((fetchPlan == null) ? FetchPlan.forClass(entityClass) : fetchPlan);
+    }
+
+    public @NotNull Flow.Publisher<T> publish(@NotNull String where, @NotNull Map<String, Object> params) {
+        return new QueryPublisher((Class)entityClass, where, params).withFetchPlan(getFetchPlan());
+    }
+
+    public @NotNull Stream<T> scan(@NotNull String where, @NotNull Map<String, Object> params, int parallelism, boolean ordered) {
+        return new ParallelScan((Class)entityClass, where, params).withFetchPlan(getFetchPlan()).withParallelism(parallelism).stream(ordered);
+    }
+
+    public void setFetchPlan(@Nullable FetchPlan fetchPlan) {
+        this.fetchPlan = fetchPlan;
+    }
+
+    public @NotNull List<T> upsert(@NotNull Session session, @NotNull Collection<T> entities) {
+        return upsert(session, entities, UPSERT_BATCH_SIZE);
+    }
+
+    public @NotNull List<T> upsert(@NotNull Session session, @NotNull Collection<T> entities, int batchSize) {
+        return Utils.upsert(session, entityClass, entities, batchSize);
+    }
+
+    public @NotNull List<T> upsert(@NotNull Collection<T> entities) {
+        return Utils.withSessionGet(session -> upsert(session, entities));
+    }
+
+    private static @NotNull List<List> toIdLists(@NotNull Collection<?> ids) {
+        return ids.stream().map(id -> ((id instanceof List<?> l) ? l : List.of(id))).collect(Collectors.toList());
+    }
 }
@@ -0,0 +1,302 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: CacheInvalidation.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.interfaces.InvalidationTransport;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import org.hibernate.Session;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.projectgalen.lib.jpa.utils.base.Utils.*;
+
+/**
+ * Tells the other nodes sharing the database which cached entities have been saved, deleted, or changed by a bulk statement on this node so that
+ * they can evict their copies. Once a transaction commits the keys of its entities are queued and sent, a batch at a time, through an {@link
+ * InvalidationTransport}. A node receiving a batch evicts the matching entities from its entity cache and off-heap tier, drops the to-many lists of
+ * those entity types held by its cached entities, and invalidates its query cache for those types.
+ * <p>
+ * Each key is sent as an integer class ID (the hash of the class name) followed by either the numeric ID or the primary key string. Delivery is
+ * best effort so a node that misses a batch keeps its stale copies until they are evicted some other way.
+ * <p>
+ * Every message carries the ID of the node that sent it and a node ignores its own messages. The ID is chosen when the node is started rather than
+ * once per JVM, so a node that is stopped and started again receives what it sent before the restart like any other node would.
+ */
+@SuppressWarnings({ "unused", "unchecked" })
+public final class CacheInvalidation {
+    private static final    int                            MAGIC     = 0x50474349;
+    private static final    byte                           NUMERIC   = 0;
+    private static final    byte                           STRING    = 1;
+    private static final    int                            HEADER    = (Integer.BYTES + Long.BYTES + Short.BYTES);
+    private static final    Map<Integer, Class<?>>         CLASSES   = new ConcurrentHashMap<>();
+    private static final    Map<Class<?>, Set<JpaBase<?>>> OWNERS    = new HashMap<>();
+    private static final    LinkedHashSet<Key>             PENDING   = new LinkedHashSet<>();
+    private static final    AtomicLong                     SENT      = new AtomicLong();
+    private static final    AtomicLong                     RECEIVED  = new AtomicLong();
+    private static final    AtomicLong                     ERRORS    = new AtomicLong();
+    private static final    ScheduledExecutorService       EXECUTOR  = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "CacheInvalidation");
+        t.setDaemon(true);
+        return t;
+    });
+    private static          InvalidationTransport          transport = null;
+    private static          ScheduledFuture<?>             future    = null;
+    private static volatile long                           nodeId    = 0;
+
+    private CacheInvalidation() { }
+
+    public static long getErrorCount() {
+        return ERRORS.get();
+    }
+
+    /**
+     * Returns the ID that this node's messages are sent with. A new one is chosen every time {@link #start(InvalidationTransport, long)} is called.
+     *
+     * @return The node ID or zero if it has never been started.
+     */
+    public static long getNodeId() {
+        return nodeId;
+    }
+
+    public static long getReceivedCount() {
+        return RECEIVED.get();
+    }
+
+    public static long getSentCount() {
+        return SENT.get();
+    }
+
+    public static synchronized boolean isStarted() {
+        return (transport != null);
+    }
+
+    /**
+     * Opens the transport and starts sending and receiving invalidation messages. Any transport already in use is stopped first.
+     *
+     * @param transport   The transport.
+     * @param flushMillis How long keys are collected before they are sent as a batch.
+     *
+     * @throws IOException if the transport could not be opened.
+     */
+    public static synchronized void start(@NotNull InvalidationTransport transport, long flushMillis) throws IOException {
+        stop();
+        nodeId = new Random().nextLong();
+        transport.open(CacheInvalidation::receive);
+        CacheInvalidation.transport = transport;
+        future = EXECUTOR.scheduleWithFixedDelay(CacheInvalidation::flush, flushMillis, Math.max(1, flushMillis), TimeUnit.MILLISECONDS);
+    }
+
+    public static void start(@NotNull InvalidationTransport transport) throws IOException {
+        start(transport, 20);
+    }
+
+    /**
+     * Sends any queued keys and closes the transport.
+     */
+    public static synchronized void stop() {
+        if(transport != null) {
+            future.cancel(false);
+            flush();
+            try {
+                transport.close();
+            }
+            catch(IOException e) {
+                ERRORS.incrementAndGet();
+            }
+            transport = null;
+            future    = null;
+            PENDING.clear();
+        }
+    }
+
+    static void addToManyOwner(@NotNull Class<?> cls, @NotNull JpaBase<?> owner) {
+        classId(cls);
+        synchronized(OWNERS) {
+            OWNERS.computeIfAbsent(cls, k -> Collections.newSetFromMap(new WeakHashMap<>())).add(owner);
+        }
+    }
+
+    static int classId(@NotNull Class<?> cls) {
+        int id = cls.getName().hashCode();
+        CLASSES.putIfAbsent(id, cls);
+        return id;
+    }
+
+    static @NotNull List<byte[]> encode(long nodeId, @NotNull Collection<Key> keys, int maxSize) {
+        List<byte[]>          messages = new ArrayList<>();
+        ByteArrayOutputStream bytes    = new ByteArrayOutputStream();
+        List<Key>             batch    = new ArrayList<>();
+        int                   size     = HEADER;
+
+        for(Key key : keys) {
+            int length = key.getEncodedSize();
+            if(!batch.isEmpty() && (((size + length) > maxSize) || (batch.size() == Short.MAX_VALUE))) {
+                messages.add(encode(bytes, nodeId, batch));
+                batch.clear();
+                size = HEADER;
+            }
+            batch.add(key);
+            size += length;
+        }
+
+        if(!batch.isEmpty()) messages.add(encode(bytes, nodeId, batch));
+        return messages;
+    }
+
+    /**
+     * Queues the keys of the given entities to be sent once the session's current transaction commits.
+     */
+    static void publish(@NotNull Session session, @NotNull Collection<? extends JpaBase<?>> entities) {
+        if(isStarted()) enqueue(session, entities.stream().map(Key::of).toList());
+    }
+
+    /**
+     * Queues the given keys of an entity class to be sent once the session's current transaction commits.
+     */
+    static void publish(@NotNull Session session, @NotNull Class<?> cls, @NotNull List<List> ids) {
+        if(isStarted()) enqueue(session, ids.stream().map(id -> Key.of(cls, id)).toList());
+    }
+
+    static void receive(byte @NotNull [] message) {
+        try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(message))) {
+            if((in.readInt() != MAGIC) || (in.readLong() == nodeId)) return;
+
+            List<Key> keys = new ArrayList<>();
+            for(int i = 0, j = in.readUnsignedShort(); i < j; i++) {
+                Class<?> cls = CLASSES.get(in.readInt());
+                Key      key = ((in.readByte() == NUMERIC) ? new Key(cls, in.readLong(), null) : new Key(cls, null, in.readUTF()));
+                if(cls != null) keys.add(key);
+            }
+
+            RECEIVED.incrementAndGet();
+            evict(keys);
+        }
+        catch(IOException e) {
+            ERRORS.incrementAndGet();
+        }
+    }
+
+    private static @NotNull byte[] encode(@NotNull ByteArrayOutputStream bytes, long nodeId, @NotNull List<Key> batch) {
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            bytes.reset();
+            out.writeInt(MAGIC);
+            out.writeLong(nodeId);
+            out.writeShort(batch.size());
+            for(Key key : batch) {
+                out.writeInt(classId(key.cls));
+                if(key.id != null) {
+                    out.writeByte(NUMERIC);
+                    out.writeLong(key.id);
+                }
+                else {
+                    out.writeByte(STRING);
+                    out.writeUTF(key.pkey);
+                }
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void enqueue(@NotNull Session session, @NotNull List<Key> keys) {
+        if(keys.isEmpty()) return;
+        if(!session.getTransaction().isActive()) {
+            enqueue(keys);
+        }
+        else session.getTransaction().registerSynchronization(new Synchronization() {
+            public @Override void afterCompletion(int status) {
+                if(status == Status.STATUS_COMMITTED) enqueue(keys);
+            }
+
+            public @Override void beforeCompletion() { }
+        });
+    }
+
+    private static synchronized void enqueue(@NotNull List<Key> keys) {
+        if(transport != null) PENDING.addAll(keys);
+    }
+
+    private static void evict(@NotNull List<Key> keys) {
+        Set<Class<?>>    classes = new LinkedHashSet<>();
+        List<JpaBase<?>> owners  = new ArrayList<>();
+        List<JpaBase<?>> evicted = locked(() -> keys.stream().peek(k -> classes.add(k.cls)).flatMap(k -> Utils.evict(k.cls, k.id, k.getPKey()).stream()).toList());
+
+        synchronized(OWNERS) {
+            OWNERS.forEach((c, s) -> { if(classes.stream().anyMatch(k -> (c.isAssignableFrom(k) || k.isAssignableFrom(c)))) owners.addAll(s); });
+        }
+
+        owners.forEach(o -> classes.forEach(o::resetToManyCache));
+        classes.forEach(QueryCache::invalidate);
+        UpdateListeners.batch(null, () -> evicted.forEach(JpaBase::fireUpdatedEvent));
+    }
+
+    private static synchronized void flush() {
+        if((transport == null) || PENDING.isEmpty()) return;
+
+        List<Key> keys = new ArrayList<>(PENDING);
+        PENDING.clear();
+
+        for(byte[] message : encode(nodeId, keys, transport.getMaxMessageSize())) {
+            try {
+                transport.send(message);
+                SENT.incrementAndGet();
+            }
+            catch(IOException e) {
+                ERRORS.incrementAndGet();
+            }
+        }
+    }
+
+    record Key(Class<?> cls, @Nullable Long id, @Nullable String pkey) {
+        int getEncodedSize() {
+            return (Integer.BYTES + 1 + ((id != null) ? Long.BYTES : (Short.BYTES + (pkey.length() * 3))));
+        }
+
+        @NotNull String getPKey() {
+            return ((pkey == null) ? Utils.getPKey(cls, List.of(id)) : pkey);
+        }
+
+        static @NotNull Key of(@NotNull JpaBase<?> e) {
+            long id = getNumericId(e);
+            return ((id == NO_NUMERIC_ID) ? new Key(e.getClass(), null, e.getPKey()) : new Key(e.getClass(), id, null));
+        }
+
+        static @NotNull Key of(@NotNull Class<?> cls, @NotNull List ids) {
+            return (((ids.size() == 1) && (ids.get(0) instanceof Number n) && (n.longValue() != NO_NUMERIC_ID) && (getNumericIdField(cls) != null)) ? new Key(cls, n.longValue(), null) : new Key(cls, null, Utils.getPKey(cls, ids)));
+        }
+    }
+}
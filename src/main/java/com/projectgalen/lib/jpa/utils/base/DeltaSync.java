@@ -0,0 +1,247 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: DeltaSync.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.annotations.Watermark;
+import com.projectgalen.lib.jpa.utils.errors.DaoException;
+import com.projectgalen.lib.utils.helpers.Null;
+import com.projectgalen.lib.utils.reflection.Reflection;
+import jakarta.persistence.Column;
+import jakarta.persistence.Id;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.OneToOne;
+import org.hibernate.Hibernate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.projectgalen.lib.jpa.utils.base.Utils.*;
+import static com.projectgalen.lib.jpa.utils.enums.JpaState.CURRENT;
+import static com.projectgalen.lib.utils.reflection.Reflection2.getAnnotatedFields;
+
+/**
+ * Keeps the entity cache up to date with changes made by other processes. For each registered entity class the rows whose {@link Watermark} field
+ * is greater than the highest value seen so far are read from the database. Cached entities with no unsaved changes are patched with the new values and cached entities with unsaved changes are
+ * evicted. Either way a {@link com.projectgalen.lib.jpa.utils.events.JpaUpdateEvent} is fired for them. Rows that are not in the cache are ignored.
+ * <p>
+ * Deleted rows can't be seen this way and stay in the cache until they are evicted.
+ * <p>
+ * A {@link jakarta.persistence.Version} field can't be used as the watermark because each row's version counts from its own starting value, so a
+ * row whose version is below the highest one seen would never be read.
+ */
+@SuppressWarnings({ "unused", "unchecked", "rawtypes" })
+public final class DeltaSync {
+    private static final System.Logger            LOG      = System.getLogger(DeltaSync.class.getName());
+    private static final Map<Class<?>, Entry>     ENTRIES  = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "DeltaSync");
+        t.setDaemon(true);
+        return t;
+    });
+    private static       ScheduledFuture<?>       future   = null;
+
+    private DeltaSync() { }
+
+    public static @NotNull Set<Class<?>> getRegistered() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(ENTRIES.keySet()));
+    }
+
+    public static @Nullable Object getWatermark(@NotNull Class<?> cls) {
+        return Optional.ofNullable(ENTRIES.get(cls)).map(e -> e.watermark).orElse(null);
+    }
+
+    public static synchronized boolean isRunning() {
+        return (future != null);
+    }
+
+    public static void register(@NotNull Class<? extends JpaBase<?>> cls) {
+        register(SessionFactories.DEFAULT, cls);
+    }
+
+    /**
+     * Registers an entity class to be synchronized. Only changes made after the class is registered are read.
+     *
+     * @param factoryName The name of the session factory the class belongs to.
+     * @param cls         The entity class.
+     *
+     * @throws DaoException if the class has no {@link Watermark} field.
+     */
+    public static void register(@NotNull String factoryName, @NotNull Class<? extends JpaBase<?>> cls) {
+        Field wm = getAnnotatedFields(cls, Watermark.class).findFirst().orElse(null);
+        if(wm == null) throw new DaoException(msgs.format("msg.err.delta_sync.no_watermark", cls.getName()));
+
+        Entry  entry = new Entry(factoryName, cls, wm);
+        String ql    = String.format("select max(e.%s) %s", wm.getName(), getFromClause(cls));
+        entry.watermark = withSessionGet(SessionFactories.get(factoryName), true, s -> withQueryGet(s, Object.class, ql, Collections.emptyMap(), 0, 1, (x, q) -> q.getSingleResult()));
+        ENTRIES.put(cls, entry);
+    }
+
+    /**
+     * Starts synchronizing the registered classes in the background. If it is already running then the period is changed.
+     *
+     * @param period The time between each synchronization.
+     * @param unit   The unit of the period.
+     */
+    public static synchronized void start(long period, @NotNull TimeUnit unit) {
+        stop();
+        future = EXECUTOR.scheduleWithFixedDelay(DeltaSync::syncQuietly, period, period, unit);
+    }
+
+    public static synchronized void stop() {
+        if(future != null) {
+            future.cancel(false);
+            future = null;
+        }
+    }
+
+    /**
+     * Reads the rows of the given class that have changed since the last synchronization and applies them to the entity cache.
+     *
+     * @param cls The registered entity class.
+     *
+     * @return The number of cached entities that were patched or evicted.
+     */
+    public static int sync(@NotNull Class<?> cls) {
+        Entry entry = ENTRIES.get(cls);
+        return ((entry == null) ? 0 : entry.sync());
+    }
+
+    /**
+     * Synchronizes every registered class.
+     *
+     * @return The number of cached entities that were patched or evicted for each class.
+     */
+    public static @NotNull Map<Class<?>, Integer> syncAll() {
+        Map<Class<?>, Integer> results = new LinkedHashMap<>();
+        ENTRIES.values().forEach(e -> results.put(e.cls, e.sync()));
+        return results;
+    }
+
+    public static void unregister(@NotNull Class<?> cls) {
+        ENTRIES.remove(cls);
+    }
+
+    private static void syncQuietly() {
+        for(Entry entry : ENTRIES.values()) {
+            try {
+                entry.sync();
+            }
+            catch(Exception e) {
+                /* The watermark hasn't moved so the same rows will be read again next time. */
+                LOG.log(System.Logger.Level.WARNING, msgs.format("msg.err.delta_sync.failed", entry.cls.getName()), e);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final    String      factoryName;
+        private final    Class<?>    cls;
+        private final    Field       wm;
+        private final    List<Field> fields;
+        private final    String      ql;
+        private volatile Object      watermark;
+
+        public Entry(@NotNull String factoryName, @NotNull Class<?> cls, @NotNull Field wm) {
+            this.factoryName = factoryName;
+            this.cls         = cls;
+            this.wm          = wm;
+            this.fields      = getAnnotatedFields(cls, Column.class, ManyToOne.class, OneToOne.class).filter(Entry::isOwned).peek(Field::trySetAccessible).collect(Collectors.toList());
+            this.ql          = String.format("%s where e.%2$s > :pgWatermark order by e.%2$s", getFromClause(cls), wm.getName());
+        }
+
+        public synchronized int sync() {
+            List<Row> rows = withSessionGet(SessionFactories.get(factoryName), true, s -> {
+                String              q      = ((watermark == null) ? String.format("%s where e.%s is not null", getFromClause(cls), wm.getName()) : ql);
+                Map<String, Object> params = ((watermark == null) ? Collections.emptyMap() : Map.of("pgWatermark", watermark));
+                List<JpaBase<?>>    list   = withQueryGet(s, (Class<JpaBase<?>>)cls, q, params, 0, 0, (x, query) -> query.getResultList());
+                list.forEach(Utils::initialize);
+                return list.stream().map(e -> new Row(e, fields.stream().map(f -> unproxy(Reflection.getFieldValue(f, e))).toList())).toList();
+            });
+
+            if(rows.isEmpty()) return 0;
+
+            List<JpaBase<?>> updated = new ArrayList<>();
+            for(Row row : rows) Null.doIfNotNull(locked(() -> getCached(factoryName, (Class<JpaBase<?>>)cls, getIds(row.entity))), cached -> updated.add(apply(cached, row)));
+
+            watermark = Reflection.getFieldValue(wm, rows.get(rows.size() - 1).entity);
+            QueryCache.invalidate(cls);
+            UpdateListeners.batch(null, () -> updated.forEach(JpaBase::fireUpdatedEvent));
+            return updated.size();
+        }
+
+        /**
+         * Must not be called while holding the cache lock because the entity's lock is taken first.
+         */
+        private @NotNull JpaBase<?> apply(@NotNull JpaBase<?> cached, @NotNull Row row) {
+            synchronized(cached.syncLock) {
+                if((cached.jpaState != CURRENT) || !cached.changedFields.isEmpty()) {
+                    doLocked(() -> removeFromCache(cached));
+                }
+                else {
+                    for(int i = 0; i < fields.size(); i++) Reflection.setFieldValue(fields.get(i), cached, resolve(row.values.get(i)));
+                    Null.doIfNotNull(getVersionField(cls), v -> Reflection.setFieldValue(v, cached, Reflection.getFieldValue(v, row.entity)));
+                    cached.cachedToManyMap.clear();
+                }
+            }
+            return cached;
+        }
+
+        private @NotNull List<Object> getIds(@NotNull JpaBase<?> row) {
+            return getAnnotatedFields(cls, Id.class).map(f -> Reflection.getFieldValue(f, row)).collect(Collectors.toList());
+        }
+
+        /**
+         * References to other entities are replaced with the cached instances so that the patched entity doesn't point into the session that read it.
+         * The references have already been loaded by {@link #unproxy(Object)}.
+         */
+        private @Nullable Object resolve(@Nullable Object value) {
+            return ((value instanceof JpaBase<?>) ? locked(() -> replaceWithCached(factoryName, (JpaBase<?>)value)) : value);
+        }
+
+        private static boolean isOwned(@NotNull Field f) {
+            return Optional.ofNullable(f.getAnnotation(OneToOne.class)).map(a -> a.mappedBy().isEmpty()).orElse(true);
+        }
+
+        /**
+         * Loads a lazy reference to another entity. Must be called while the session that read it is still open.
+         */
+        private static @Nullable Object unproxy(@Nullable Object value) {
+            Object v = Hibernate.unproxy(value);
+            if(v instanceof JpaBase<?>) Utils.initialize(v);
+            return v;
+        }
+    }
+
+    /**
+     * A row that has been read, along with the values of the fields that are copied to the cached entity.
+     */
+    private record Row(@NotNull JpaBase<?> entity, @NotNull List<Object> values) { }
+}
@@ -0,0 +1,293 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: EntityCodec.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.errors.DaoException;
+import com.projectgalen.lib.utils.reflection.Reflection;
+import jakarta.persistence.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+import static com.projectgalen.lib.jpa.utils.base.Utils.*;
+import static com.projectgalen.lib.utils.reflection.Reflection2.getAnnotatedFields;
+
+/**
+ * Compact binary encoding of the persisted state of an entity. References to other entities are written as the values of their ID fields and
+ * resolved again when the entity is read back. Only the {@link Id}, {@link Version}, {@link Column}, {@link ManyToOne} and {@link OneToOne} fields
+ * are encoded, so a class with any other persisted field, such as a collection, is not supported.
+ */
+@SuppressWarnings({ "unchecked", "rawtypes" })
+final class EntityCodec {
+    private static final Map<Class<?>, EntityCodec> CODECS = new ConcurrentHashMap<>();
+    private static final Set<Class<?>>              TYPES  = Set.of(boolean.class, Boolean.class, byte.class, Byte.class, short.class, Short.class, int.class,
+                                                                    Integer.class, long.class, Long.class, float.class, Float.class, double.class, Double.class,
+                                                                    char.class, Character.class, String.class, BigDecimal.class, BigInteger.class, Date.class,
+                                                                    java.sql.Date.class, java.sql.Time.class, java.sql.Timestamp.class, LocalDate.class,
+                                                                    LocalDateTime.class, LocalTime.class, Instant.class, OffsetDateTime.class, UUID.class,
+                                                                    byte[].class);
+
+    private static final byte T_NULL       = 0;
+    private static final byte T_BOOLEAN    = 1;
+    private static final byte T_BYTE       = 2;
+    private static final byte T_SHORT      = 3;
+    private static final byte T_INT        = 4;
+    private static final byte T_LONG       = 5;
+    private static final byte T_FLOAT      = 6;
+    private static final byte T_DOUBLE     = 7;
+    private static final byte T_CHAR       = 8;
+    private static final byte T_STRING     = 9;
+    private static final byte T_DECIMAL    = 10;
+    private static final byte T_BIGINT     = 11;
+    private static final byte T_DATE       = 12;
+    private static final byte T_SQL_DATE   = 13;
+    private static final byte T_SQL_TIME   = 14;
+    private static final byte T_TIMESTAMP  = 15;
+    private static final byte T_LOCAL_DATE = 16;
+    private static final byte T_LOCAL_DT   = 17;
+    private static final byte T_LOCAL_TIME = 18;
+    private static final byte T_INSTANT    = 19;
+    private static final byte T_OFFSET_DT  = 20;
+    private static final byte T_UUID       = 21;
+    private static final byte T_BYTES      = 22;
+    private static final byte T_ENUM       = 23;
+    private static final byte T_REF        = 24;
+
+    private final Class<?>    cls;
+    private final List<Field> fields;
+    private final boolean     supported;
+
+    private EntityCodec(@NotNull Class<?> cls) {
+        this.cls       = cls;
+        this.fields    = getAnnotatedFields(cls, Id.class, Version.class, Column.class, ManyToOne.class, OneToOne.class).distinct().collect(Collectors.toList());
+        this.supported = (fields.stream().allMatch(EntityCodec::isSupported) && !hasUnencodedFields(cls, fields));
+        this.fields.forEach(f -> f.setAccessible(true));
+    }
+
+    public @NotNull Class<?> getEntityClass() {
+        return cls;
+    }
+
+    public @NotNull List<String> getFieldNames() {
+        return fields.stream().map(Field::getName).collect(Collectors.toList());
+    }
+
+    public boolean isSupported() {
+        return supported;
+    }
+
+    /**
+     * Reads an entity that was written with {@link #write(DataOutput, JpaBase)}. The entity is created in the CURRENT state and is not added to the
+     * cache.
+     *
+     * @param buffer   The buffer to read from.
+     * @param resolver Called to resolve references to other entities from the class and values of the ID fields of the referenced entity. May
+     *                 return null if the reference cannot be resolved.
+     *
+     * @return The entity or null if one of its references could not be resolved.
+     */
+    public @Nullable JpaBase<?> read(@NotNull ByteBuffer buffer, @NotNull BiFunction<Class<?>, List<Object>, JpaBase<?>> resolver) {
+        JpaBase<?> entity   = newInstance();
+        boolean    resolved = true;
+
+        for(Field f : fields) {
+            Object value = readValue(buffer, f.getType());
+            if(value instanceof List ids) {
+                value    = resolver.apply(f.getType(), ids);
+                resolved = (resolved && (value != null));
+            }
+            Reflection.setFieldValue(f, entity, value);
+        }
+
+        return (resolved ? entity : null);
+    }
+
+    public void write(@NotNull DataOutput out, @NotNull JpaBase<?> entity) throws IOException {
+        for(Field f : fields) {
+            Object value = getValue(f, entity);
+            if((value instanceof JpaBase<?>) && isJpaBaseField(f)) writeRef(out, f.getType(), (JpaBase<?>)value);
+            else writeValue(out, value);
+        }
+    }
+
+    private @NotNull JpaBase<?> newInstance() {
+        try {
+            Constructor<?> c = cls.getDeclaredConstructor();
+            c.setAccessible(true);
+            return (JpaBase<?>)c.newInstance();
+        }
+        catch(Exception e) {
+            throw new DaoException(msgs.format("msg.err.dao.new_instance_failure", cls.getName()), e);
+        }
+    }
+
+    public static @NotNull EntityCodec get(@NotNull Class<?> cls) {
+        return CODECS.computeIfAbsent(cls, EntityCodec::new);
+    }
+
+    public static @NotNull String readString(@NotNull ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static @Nullable Object readValue(@NotNull ByteBuffer buffer, @NotNull Class<?> type) {
+        byte tag = buffer.get();
+        return switch(tag) {/*@f0*/
+            case T_NULL       -> null;
+            case T_BOOLEAN    -> (buffer.get() != 0);
+            case T_BYTE       -> buffer.get();
+            case T_SHORT      -> buffer.getShort();
+            case T_INT        -> buffer.getInt();
+            case T_LONG       -> buffer.getLong();
+            case T_FLOAT      -> buffer.getFloat();
+            case T_DOUBLE     -> buffer.getDouble();
+            case T_CHAR       -> buffer.getChar();
+            case T_STRING     -> readString(buffer);
+            case T_DECIMAL    -> new BigDecimal(readString(buffer));
+            case T_BIGINT     -> new BigInteger(readString(buffer));
+            case T_DATE       -> new Date(buffer.getLong());
+            case T_SQL_DATE   -> new java.sql.Date(buffer.getLong());
+            case T_SQL_TIME   -> new java.sql.Time(buffer.getLong());
+            case T_TIMESTAMP  -> readTimestamp(buffer);
+            case T_LOCAL_DATE -> LocalDate.ofEpochDay(buffer.getLong());
+            case T_LOCAL_DT   -> LocalDateTime.of(LocalDate.ofEpochDay(buffer.getLong()), LocalTime.ofNanoOfDay(buffer.getLong()));
+            case T_LOCAL_TIME -> LocalTime.ofNanoOfDay(buffer.getLong());
+            case T_INSTANT    -> Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+            case T_OFFSET_DT  -> OffsetDateTime.ofInstant(Instant.ofEpochSecond(buffer.getLong(), buffer.getInt()), ZoneOffset.ofTotalSeconds(buffer.getInt()));
+            case T_UUID       -> new UUID(buffer.getLong(), buffer.getLong());
+            case T_BYTES      -> readBytes(buffer);
+            case T_ENUM       -> Enum.valueOf((Class<Enum>)type, readString(buffer));
+            case T_REF        -> readRef(buffer);
+            default           -> throw new DaoException(msgs.format("msg.err.not_supported", tag));
+        };/*@f1*/
+    }
+
+    public static void writeString(@NotNull DataOutput out, @NotNull String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static void writeValue(@NotNull DataOutput out, @Nullable Object value) throws IOException {/*@f0*/
+        if(value == null)                              { out.writeByte(T_NULL); }
+        else if(value instanceof Boolean v)            { out.writeByte(T_BOOLEAN); out.writeByte(v ? 1 : 0); }
+        else if(value instanceof Byte v)               { out.writeByte(T_BYTE); out.writeByte(v); }
+        else if(value instanceof Short v)              { out.writeByte(T_SHORT); out.writeShort(v); }
+        else if(value instanceof Integer v)            { out.writeByte(T_INT); out.writeInt(v); }
+        else if(value instanceof Long v)               { out.writeByte(T_LONG); out.writeLong(v); }
+        else if(value instanceof Float v)              { out.writeByte(T_FLOAT); out.writeFloat(v); }
+        else if(value instanceof Double v)             { out.writeByte(T_DOUBLE); out.writeDouble(v); }
+        else if(value instanceof Character v)          { out.writeByte(T_CHAR); out.writeChar(v); }
+        else if(value instanceof String v)             { out.writeByte(T_STRING); writeString(out, v); }
+        else if(value instanceof BigDecimal v)         { out.writeByte(T_DECIMAL); writeString(out, v.toString()); }
+        else if(value instanceof BigInteger v)         { out.writeByte(T_BIGINT); writeString(out, v.toString()); }
+        else if(value instanceof java.sql.Timestamp v) { out.writeByte(T_TIMESTAMP); out.writeLong(v.getTime()); out.writeInt(v.getNanos()); }
+        else if(value instanceof java.sql.Date v)      { out.writeByte(T_SQL_DATE); out.writeLong(v.getTime()); }
+        else if(value instanceof java.sql.Time v)      { out.writeByte(T_SQL_TIME); out.writeLong(v.getTime()); }
+        else if(value instanceof Date v)               { out.writeByte(T_DATE); out.writeLong(v.getTime()); }
+        else if(value instanceof LocalDate v)          { out.writeByte(T_LOCAL_DATE); out.writeLong(v.toEpochDay()); }
+        else if(value instanceof LocalDateTime v)      { out.writeByte(T_LOCAL_DT); out.writeLong(v.toLocalDate().toEpochDay()); out.writeLong(v.toLocalTime().toNanoOfDay()); }
+        else if(value instanceof LocalTime v)          { out.writeByte(T_LOCAL_TIME); out.writeLong(v.toNanoOfDay()); }
+        else if(value instanceof Instant v)            { out.writeByte(T_INSTANT); out.writeLong(v.getEpochSecond()); out.writeInt(v.getNano()); }
+        else if(value instanceof OffsetDateTime v)     { out.writeByte(T_OFFSET_DT); out.writeLong(v.toEpochSecond()); out.writeInt(v.getNano()); out.writeInt(v.getOffset().getTotalSeconds()); }
+        else if(value instanceof UUID v)               { out.writeByte(T_UUID); out.writeLong(v.getMostSignificantBits()); out.writeLong(v.getLeastSignificantBits()); }
+        else if(value instanceof byte[] v)             { out.writeByte(T_BYTES); out.writeInt(v.length); out.write(v); }
+        else if(value instanceof Enum<?> v)            { out.writeByte(T_ENUM); writeString(out, v.name()); }
+        else throw new DaoException(msgs.format("msg.err.not_supported", value.getClass().getName()));
+    }/*@f1*/
+
+    /**
+     * Returns true if the class has persisted fields that aren't encoded, such as {@link OneToMany} or {@link ManyToMany} collections or basic fields
+     * without a {@link Column}. An entity read back without them would be missing part of its state.
+     */
+    private static boolean hasUnencodedFields(@NotNull Class<?> cls, @NotNull List<Field> fields) {
+        for(Class<?> c = cls; (c != null) && (c != JpaBase.class) && (c != Object.class); c = c.getSuperclass()) {
+            for(Field f : c.getDeclaredFields()) {
+                int m = f.getModifiers();
+                if(!Modifier.isStatic(m) && !Modifier.isTransient(m) && !f.isSynthetic() && !f.isAnnotationPresent(Transient.class) && !fields.contains(f)) return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSupported(@NotNull Field f) {
+        Class<?> t = f.getType();
+        if(isJpaBaseField(f)) return getAnnotatedFields(t, Id.class).allMatch(EntityCodec::isSupported);
+        return (TYPES.contains(t) || t.isEnum());
+    }
+
+    private static byte @NotNull [] readBytes(@NotNull ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static @NotNull List<Object> readRef(@NotNull ByteBuffer buffer) {
+        int          count = buffer.get();
+        List<Object> ids   = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) ids.add(readValue(buffer, Object.class));
+        return ids;
+    }
+
+    private static @NotNull java.sql.Timestamp readTimestamp(@NotNull ByteBuffer buffer) {
+        java.sql.Timestamp ts = new java.sql.Timestamp(buffer.getLong());
+        ts.setNanos(buffer.getInt());
+        return ts;
+    }
+
+    private static void writeRef(@NotNull DataOutput out, @NotNull Class<?> type, @NotNull JpaBase<?> ref) throws IOException {
+        List<Field> ids = getAnnotatedFields(type, Id.class).collect(Collectors.toList());
+        out.writeByte(T_REF);
+        out.writeByte(ids.size());
+        for(Field f : ids) writeValue(out, getValue(f, ref));
+    }
+
+    static @Nullable Object getValue(@NotNull Field f, @NotNull Object obj) {
+        /*
+         * References may be uninitialized proxies so their ID fields are read through the getters, which the proxy answers without going to the database.
+         */
+        try {
+            Method m = obj.getClass().getMethod(getFieldGetterName(f));
+            return Reflection.callMethod(m, obj);
+        }
+        catch(NoSuchMethodException e) {
+            return Reflection.getFieldValue(f, obj);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: EntityPreloader.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.annotations.PGJPA;
+import jakarta.persistence.metamodel.EntityType;
+import org.hibernate.Session;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static com.projectgalen.lib.jpa.utils.base.Utils.*;
+
+/**
+ * Loads whole entity classes into the entity cache ahead of time. Each class is split into ranges of its ID and the ranges are loaded in parallel,
+ * each in its own session. Entities loaded this way are pinned in the cache so that they are not lost to the garbage collector until
+ * {@link Utils#unpinCache(Class)} or {@link Utils#clearCache()} is called.
+ */
+@SuppressWarnings({ "unused", "unchecked" })
+public final class EntityPreloader {
+
+    private EntityPreloader() { }
+
+    /**
+     * Returns all the mapped entity classes that are annotated with <code>@PGJPA(preload = true)</code>.
+     *
+     * @return The list of entity classes.
+     */
+    public static @NotNull List<Class<?>> getPreloadClasses() {
+        return withSessionGet(session -> session.getMetamodel()
+                                                .getEntities()
+                                                .stream()
+                                                .map(EntityType::getJavaType)
+                                                .filter(c -> Optional.ofNullable(c.getAnnotation(PGJPA.class)).map(PGJPA::preload).orElse(false))
+                                                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Loads the given entity classes into the entity cache.
+     *
+     * @param classes    The entity classes to load.
+     * @param partitions The maximum number of ID ranges to split each class into.
+     * @param threads    The number of threads (and so sessions) to use.
+     * @param listener   An optional listener that is called each time a partition has finished loading.
+     *
+     * @return The results for each class in the order given.
+     */
+    public static @NotNull List<Result> preload(@NotNull Collection<Class<?>> classes, int partitions, int threads, @Nullable Consumer<Progress> listener) {
+        List<ClassLoad> loads = classes.stream().map(c -> new ClassLoad(c, partitions)).collect(Collectors.toList());
+
+        try(ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads))) {
+            loads.forEach(l -> l.ranges.forEach(r -> executor.submit(() -> l.load(r, listener))));
+        }
+
+        return loads.stream().map(ClassLoad::getResult).collect(Collectors.toList());
+    }
+
+    /**
+     * Loads all the entity classes returned by {@link #getPreloadClasses()} into the entity cache.
+     *
+     * @param partitions The maximum number of ID ranges to split each class into.
+     * @param threads    The number of threads (and so sessions) to use.
+     * @param listener   An optional listener that is called each time a partition has finished loading.
+     *
+     * @return The results for each class.
+     */
+    public static @NotNull List<Result> preload(int partitions, int threads, @Nullable Consumer<Progress> listener) {
+        return preload(getPreloadClasses(), partitions, threads, listener);
+    }
+
+    /**
+     * Loads all the entity classes returned by {@link #getPreloadClasses()} into the entity cache in the background.
+     *
+     * @param partitions The maximum number of ID ranges to split each class into.
+     * @param threads    The number of threads (and so sessions) to use.
+     * @param listener   An optional listener that is called each time a partition has finished loading.
+     *
+     * @return A future that completes with the results for each class.
+     */
+    public static @NotNull CompletableFuture<List<Result>> preloadAsync(int partitions, int threads, @Nullable Consumer<Progress> listener) {
+        return CompletableFuture.supplyAsync(() -> preload(partitions, threads, listener));
+    }
+
+    private static long load(@NotNull Session session, @NotNull Class<?> cls, @NotNull String where, @NotNull Map<String, Object> params) {
+        String  factory = factoryOf(session);
+        List<?> list    = withQueryGet(session, cls, String.format("%s %s", getFromClause(cls), where), params, 0, 0, (s, q) -> q.getResultList());
+        list.forEach(Utils::initialize);
+        doLocked(() -> list.forEach(e -> replaceWithCached(factory, (JpaBase<?>)e)));
+        return list.size();
+    }
+
+    public record Progress(@NotNull Class<?> entityClass, int partitionsDone, int partitions, long rows, long elapsedMillis) { }
+
+    public record Result(@NotNull Class<?> entityClass, int partitions, long rows, long elapsedMillis, @Nullable Throwable error) {
+        public boolean isSuccess() {
+            return (error == null);
+        }
+    }
+
+    private static final class ClassLoad {
+        private final Class<?>                   cls;
+        private final List<Optional<IdRange>>    ranges;
+        private final long                       started = System.nanoTime();
+        private final AtomicInteger              done    = new AtomicInteger();
+        private final AtomicLong                 rows    = new AtomicLong();
+        private final AtomicLong                 elapsed = new AtomicLong();
+        private final AtomicReference<Throwable> error   = new AtomicReference<>();
+
+        public ClassLoad(@NotNull Class<?> cls, int partitions) {
+            List<IdRange> list = withSessionGet(session -> IdRange.split(session, cls, "", Collections.emptyMap(), partitions));
+            this.cls    = cls;
+            this.ranges = (list.isEmpty() ? List.of(Optional.empty()) : list.stream().map(Optional::of).collect(Collectors.toList()));
+            /* Only pinned once the ranges have been read so that a failed query doesn't leave the class pinned. */
+            doLocked(() -> pinCache(cls));
+        }
+
+        public @NotNull Result getResult() {
+            return new Result(cls, ranges.size(), rows.get(), elapsed.get(), error.get());
+        }
+
+        public void load(@NotNull Optional<IdRange> range, @Nullable Consumer<Progress> listener) {
+            try {
+                String              where  = range.map(r -> r.getWhereClause("")).orElse("");
+                Map<String, Object> params = range.map(r -> r.getParams(Collections.emptyMap())).orElseGet(Collections::emptyMap);
+                rows.addAndGet(withSessionGet(session -> EntityPreloader.load(session, cls, where, params)));
+            }
+            catch(Throwable t) {
+                error.compareAndSet(null, t);
+            }
+            finally {
+                int  d = done.incrementAndGet();
+                long e = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                elapsed.accumulateAndGet(e, Math::max);
+                if(listener != null) listener.accept(new Progress(cls, d, ranges.size(), rows.get(), e));
+            }
+        }
+    }
+}
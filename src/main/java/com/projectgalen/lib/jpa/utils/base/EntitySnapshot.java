@@ -0,0 +1,286 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: EntitySnapshot.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.annotations.Watermark;
+import com.projectgalen.lib.jpa.utils.errors.DaoException;
+import com.projectgalen.lib.utils.helpers.Null;
+import com.projectgalen.lib.utils.reflection.Reflection;
+import jakarta.persistence.Id;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.OneToOne;
+import org.hibernate.Session;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.projectgalen.lib.jpa.utils.base.EntityCodec.*;
+import static com.projectgalen.lib.jpa.utils.base.Utils.*;
+import static com.projectgalen.lib.utils.reflection.Reflection2.getAnnotatedFields;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Writes entity classes to a compact binary file and reads them back into the entity cache, through a memory-mapped buffer, when the application
+ * restarts. Only entity classes with a {@link Watermark} or {@link jakarta.persistence.Version} field can be written. When loading, a class with a
+ * {@link Watermark} field only queries the rows changed since the snapshot was written and a class with just a version field compares the version of
+ * every row. Either way a class is only loaded into the cache if, after the changes have been applied, it matches the database.
+ */
+@SuppressWarnings({ "unused", "unchecked", "rawtypes" })
+public final class EntitySnapshot {
+    private static final int  MAGIC   = 0x50474A53;
+    private static final int  VERSION = 1;
+    private static final byte ROW     = 1;
+    private static final byte END     = 0;
+
+    private EntitySnapshot() { }
+
+    public static boolean isSnapshotSupported(@NotNull Class<?> cls) {
+        return (JpaBase.class.isAssignableFrom(cls) && (getWatermarkField(cls) != null) && EntityCodec.get(cls).isSupported());
+    }
+
+    /**
+     * Loads the entity classes in the snapshot file into the entity cache. Classes that have changed shape since the snapshot was written, or whose
+     * rows no longer match the database, are skipped. Loaded classes are pinned in the cache.
+     *
+     * @param file The snapshot file.
+     *
+     * @return The result for each class in the snapshot.
+     */
+    public static @NotNull List<Result> load(@NotNull Path file) {
+        try(FileChannel channel = FileChannel.open(file, READ)) {
+            if(channel.size() > Integer.MAX_VALUE) throw new DaoException(msgs.format("msg.err.snapshot.too_large", file));
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if((buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION)) throw new DaoException(msgs.format("msg.err.snapshot.bad_format", file));
+
+            int          count   = buffer.getInt();
+            List<Result> results = new ArrayList<>(count);
+
+            for(int i = 0; i < count; i++) {
+                int length = (int)buffer.getLong();
+                results.add(loadClass(buffer.slice(buffer.position(), length)));
+                buffer.position(buffer.position() + length);
+            }
+
+            return results;
+        }
+        catch(IOException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    /**
+     * Writes the given entity classes to the snapshot file. The rows are read directly from the database in one session per class. The file is
+     * written to a temporary file first and then moved into place so that a partially written snapshot is never loaded.
+     *
+     * @param file    The snapshot file.
+     * @param classes The entity classes. Classes that are not supported are skipped.
+     *
+     * @return The classes that were written.
+     */
+    public static @NotNull List<Class<?>> write(@NotNull Path file, @NotNull Collection<Class<?>> classes) {
+        List<Class<?>> list = sortByReferences(classes.stream().filter(EntitySnapshot::isSnapshotSupported).collect(Collectors.toList()));
+        Path           tmp  = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try {
+            try(FileChannel channel = FileChannel.open(tmp, CREATE, TRUNCATE_EXISTING, WRITE)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(list.size());
+
+                for(Class<?> cls : list) {
+                    out.flush();
+                    long pos = channel.position();
+                    out.writeLong(0);
+                    withSessionDo(session -> writeClass(session, out, cls));
+                    out.flush();
+                    channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, (channel.position() - pos - Long.BYTES)), pos);
+                }
+
+                out.flush();
+            }
+            Files.move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+            return list;
+        }
+        catch(IOException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    private static @Nullable Class<?> findClass(@NotNull String name) {
+        try {
+            return Class.forName(name, true, Thread.currentThread().getContextClassLoader());
+        }
+        catch(ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static @NotNull Result loadClass(@NotNull ByteBuffer buffer) {
+        long         started = System.nanoTime();
+        String       name    = readString(buffer);
+        List<String> fields  = new ArrayList<>();
+        for(int i = 0, j = buffer.getInt(); i < j; i++) fields.add(readString(buffer));
+        String   wmName = readString(buffer);
+        Class<?> cls    = findClass(name);
+
+        if((cls == null) || !isSnapshotSupported(cls)) return new Result(name, false, 0, 0, 0);
+
+        Field       wm    = Objects.requireNonNull(getWatermarkField(cls));
+        EntityCodec codec = EntityCodec.get(cls);
+        if(!codec.getFieldNames().equals(fields) || !wm.getName().equals(wmName)) return new Result(name, false, 0, 0, 0);
+
+        return withSessionGet(session -> {
+            Object                  wmValue = readValue(buffer, wm.getType());
+            Map<String, JpaBase<?>> rows    = new LinkedHashMap<>();
+
+            while(buffer.get() == ROW) {
+                JpaBase<?> e = codec.read(buffer, (t, ids) -> resolve(session, rows, t, ids));
+                if(e == null) return new Result(name, false, 0, 0, elapsed(started));
+                rows.put(e.getPKey(), e);
+            }
+
+            int  changed = (wm.isAnnotationPresent(Watermark.class) ? refreshChanged(session, cls, wm, wmValue, rows) : refreshVersions(session, cls, wm, rows));
+            long count   = withQueryGet(session, Long.class, String.format("select count(e) %s", getFromClause(cls)), Collections.emptyMap(), 0, 1, (s, q) -> q.getSingleResult());
+            if(count != rows.size()) return new Result(name, false, rows.size(), changed, elapsed(started));
+
+            doLocked(() -> {
+                pinCache(cls);
+                rows.values().forEach(e -> replaceWithCached(factoryOf(session), e));
+            });
+
+            return new Result(name, true, rows.size(), changed, elapsed(started));
+        });
+    }
+
+    private static long elapsed(long started) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    }
+
+    private static int refreshChanged(@NotNull Session session, @NotNull Class<?> cls, @NotNull Field wm, @Nullable Object wmValue, @NotNull Map<String, JpaBase<?>> rows) {
+        String  where   = ((wmValue == null) ? "" : String.format(" where e.%s > :pgWatermark", wm.getName()));
+        Map     params  = ((wmValue == null) ? Collections.emptyMap() : Map.of("pgWatermark", wmValue));
+        List<?> changed = withQueryGet(session, cls, getFromClause(cls) + where, params, 0, 0, (s, q) -> q.getResultList());
+
+        changed.forEach(Utils::initialize);
+        changed.forEach(e -> rows.put(((JpaBase<?>)e).getPKey(), (JpaBase<?>)e));
+        return changed.size();
+    }
+
+    private static int refreshVersions(@NotNull Session session, @NotNull Class<?> cls, @NotNull Field wm, @NotNull Map<String, JpaBase<?>> rows) {
+        List<String> ids      = getAnnotatedFields(cls, Id.class).map(f -> ("e." + f.getName())).collect(Collectors.toList());
+        String       ql       = String.format("select new list(%s, e.%s) %s", String.join(", ", ids), wm.getName(), getFromClause(cls));
+        List<List>   versions = withQueryGet(session, List.class, ql, Collections.emptyMap(), 0, 0, (s, q) -> q.getResultList());
+        Set<String>  current  = new HashSet<>();
+        int          changed  = 0;
+
+        for(List row : versions) {
+            List<Object> idList = new ArrayList<>(row.subList(0, ids.size()));
+            String       pkey   = getPKey(cls, idList);
+            JpaBase<?>   e      = rows.get(pkey);
+
+            current.add(pkey);
+            if((e == null) || !Objects.equals(Reflection.getFieldValue(wm, e), row.get(ids.size()))) {
+                Null.doIfNotNull(fetchFresh(session, cls, idList), f -> rows.put(pkey, f));
+                changed++;
+            }
+        }
+
+        rows.keySet().retainAll(current);
+        return changed;
+    }
+
+    private static @Nullable JpaBase<?> fetchFresh(@NotNull Session session, @NotNull Class<?> cls, @NotNull List<Object> idList) {
+        List<String>        ids    = getAnnotatedFields(cls, Id.class).map(Field::getName).collect(Collectors.toList());
+        Map<String, Object> params = new TreeMap<>();
+        String              where  = String.join(" and ", ids.stream().map(f -> String.format("(e.%1$s = :%1$s)", f)).toList());
+
+        for(int i = 0; i < ids.size(); i++) params.put(ids.get(i), idList.get(i));
+        return (JpaBase<?>)withQueryGet(session, cls, String.format("%s where %s", getFromClause(cls), where), params, 0, 1, (s, q) -> q.getResultStream().peek(Utils::initialize).findFirst().orElse(null));
+    }
+
+    private static @Nullable JpaBase<?> resolve(@NotNull Session session, @NotNull Map<String, JpaBase<?>> rows, @NotNull Class<?> type, @NotNull List<Object> ids) {
+        JpaBase<?> e = rows.get(getPKey(type, ids));
+        return ((e == null) ? fetchById(session, (Class<JpaBase<?>>)type, ids) : e);
+    }
+
+    private static @NotNull List<Class<?>> sortByReferences(@NotNull List<Class<?>> classes) {
+        List<Class<?>> sorted = new ArrayList<>();
+        Set<Class<?>>  seen   = new HashSet<>();
+        classes.forEach(c -> sortByReferences(c, classes, sorted, seen));
+        return sorted;
+    }
+
+    private static void sortByReferences(@NotNull Class<?> cls, @NotNull List<Class<?>> classes, @NotNull List<Class<?>> sorted, @NotNull Set<Class<?>> seen) {
+        if(seen.add(cls)) {
+            getAnnotatedFields(cls, ManyToOne.class, OneToOne.class).map(Field::getType).filter(classes::contains).forEach(t -> sortByReferences(t, classes, sorted, seen));
+            sorted.add(cls);
+        }
+    }
+
+    private static void writeClass(@NotNull Session session, @NotNull DataOutputStream out, @NotNull Class<?> cls) {
+        try {
+            EntityCodec  codec  = EntityCodec.get(cls);
+            Field        wm     = Objects.requireNonNull(getWatermarkField(cls));
+            List<String> fields = codec.getFieldNames();
+
+            writeString(out, cls.getName());
+            out.writeInt(fields.size());
+            for(String f : fields) writeString(out, f);
+            writeString(out, wm.getName());
+            writeValue(out, withQueryGet(session, Object.class, String.format("select max(e.%s) %s", wm.getName(), getFromClause(cls)), Collections.emptyMap(), 0, 1, (s, q) -> q.getSingleResult()));
+
+            Iterator<?> it = withQueryGet(session, cls, getFromClause(cls), Collections.emptyMap(), 0, 0, (s, q) -> q.getResultStream().iterator());
+            for(int i = 1; it.hasNext(); i++) {
+                out.writeByte(ROW);
+                codec.write(out, (JpaBase<?>)it.next());
+                if((i % 1000) == 0) session.clear();
+            }
+
+            out.writeByte(END);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public record Result(@NotNull String className, boolean loaded, int rows, int changed, long elapsedMillis) { }
+}
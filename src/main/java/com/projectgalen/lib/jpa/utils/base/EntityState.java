@@ -0,0 +1,83 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: EntityState.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.enums.JpaState;
+import com.projectgalen.lib.utils.reflection.Reflection;
+import jakarta.persistence.Id;
+import jakarta.persistence.Version;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.Field;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.projectgalen.lib.jpa.utils.base.Utils.*;
+import static com.projectgalen.lib.jpa.utils.enums.JpaState.CURRENT;
+import static com.projectgalen.lib.jpa.utils.enums.JpaState.NEW;
+import static com.projectgalen.lib.utils.reflection.Reflection2.getAnnotatedFields;
+
+/**
+ * The state of an entity before it is saved so that it can be put back if the transaction the entity was saved in fails.
+ */
+final class EntityState {
+    private final JpaBase<?>          entity;
+    private final JpaState            state;
+    private final boolean             listed;
+    private final String              factoryName;
+    private final Map<String, Object> changedFields;
+    private final Map<Field, Object>  values = new LinkedHashMap<>();
+
+    EntityState(@NotNull JpaBase<?> entity) {
+        this.entity        = entity;
+        this.state         = entity.jpaState;
+        this.listed        = entity.listed;
+        this.factoryName   = entity.factoryName;
+        this.changedFields = new TreeMap<>(entity.changedFields);
+        getAnnotatedFields(entity.getClass(), Id.class, Version.class).distinct().forEach(f -> values.put(f, Reflection.getFieldValue(f, entity)));
+    }
+
+    public @NotNull JpaBase<?> getEntity() {
+        return entity;
+    }
+
+    public @NotNull JpaState getState() {
+        return state;
+    }
+
+    /**
+     * Puts the entity back into the state it was in when this object was created, including its generated ID and version values. If it was on the
+     * dirty list then it is put back on it. Entities that had already been taken off the list, such as those claimed by
+     * {@link Utils#saveAllParallel(int)}, are left for the caller. Must be called while holding the global lock.
+     */
+    public void restore() {
+        if(state == NEW) removeFromCache(entity);
+        entity.factoryName = factoryName;
+        values.forEach((f, v) -> Reflection.setFieldValue(f, entity, v));
+        entity.changedFields.clear();
+        entity.changedFields.putAll(changedFields);
+        entity.jpaState = state;
+        if(listed && (state != CURRENT)) addToDirtyList(entity);
+    }
+}
@@ -0,0 +1,207 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: FetchPlan.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import jakarta.persistence.EntityGraph;
+import jakarta.persistence.Subgraph;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.Session;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.projectgalen.lib.jpa.utils.base.Utils.getFromClause;
+
+/**
+ * Declares which associations are loaded along with the entities returned by a query so that an object graph is loaded in a bounded number of round
+ * trips instead of one query for every lazy association that is touched later.
+ * <ul>
+ *     <li>Join paths are added to a JPA entity graph that is given to the query as a load graph so the associations are joined into the query itself.
+ *     This is best for to-one associations.</li>
+ *     <li>Batch paths are loaded after the query with one extra query for every {@link #getBatchSize()} entities. This is best for collections, which
+ *     would multiply the rows returned if they were joined.</li>
+ * </ul>
+ * Paths may be nested using dots. (e.g. "account.owner") Batch paths are only applied to queries that start with "from" or "where".
+ * <p>
+ * A plan can be given for a single call or set as the default for an entity class with {@link #setDefault(Class, FetchPlan)}.
+ */
+@SuppressWarnings("unused")
+public final class FetchPlan {
+    public static final FetchPlan NONE       = new FetchPlan(List.of(), List.of(), 100);
+    public static final String    LOAD_GRAPH = "jakarta.persistence.loadgraph";
+
+    private static final Map<Class<?>, FetchPlan> DEFAULTS = new ConcurrentHashMap<>();
+
+    private final List<String> joins;
+    private final List<String> batches;
+    private final int          batchSize;
+
+    private FetchPlan(@NotNull List<String> joins, @NotNull List<String> batches, int batchSize) {
+        this.joins     = Collections.unmodifiableList(joins);
+        this.batches   = Collections.unmodifiableList(batches);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public @NotNull FetchPlan andBatch(String @NotNull ... paths) {
+        return new FetchPlan(joins, concat(batches, paths), batchSize);
+    }
+
+    public @NotNull FetchPlan andJoin(String @NotNull ... paths) {
+        return new FetchPlan(concat(joins, paths), batches, batchSize);
+    }
+
+    public @NotNull List<String> getBatchPaths() {
+        return batches;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public @NotNull List<String> getJoinPaths() {
+        return joins;
+    }
+
+    public boolean isEmpty() {
+        return (joins.isEmpty() && batches.isEmpty());
+    }
+
+    public @Override String toString() {
+        return String.format("FetchPlan{joins=%s, batches=%s, batchSize=%d}", joins, batches, batchSize);
+    }
+
+    /**
+     * Returns a copy of this plan with the given batch size. The batch size is the number of entities loaded by each batch query and the number of
+     * cache misses loaded by each query in {@link Utils#stream(Session, Class, String, Map, int, int, FetchPlan)}.
+     *
+     * @param size The batch size.
+     *
+     * @return The new plan.
+     */
+    public @NotNull FetchPlan withBatchSize(int size) {
+        return new FetchPlan(joins, batches, size);
+    }
+
+    /**
+     * Loads the batch paths of this plan for the given entities, all of which must be managed by the session.
+     *
+     * @param session  The session.
+     * @param cls      The entity class.
+     * @param entities The entities.
+     */
+    <E> void batchFetch(@NotNull Session session, @NotNull Class<E> cls, @NotNull List<E> entities) {
+        if(entities.isEmpty()) return;
+        for(String path : batches) {
+            String ql = String.format("select distinct e %s%s where e in (:pgList)", getFromClause(cls), getJoinFetchClause(path));
+            for(int i = 0; i < entities.size(); i += batchSize) session.createQuery(ql, cls).setParameter("pgList", entities.subList(i, Math.min(entities.size(), i + batchSize))).getResultList();
+        }
+    }
+
+    /**
+     * Adds the join paths of this plan to the query as a load graph.
+     *
+     * @param session The session the query was created from.
+     * @param cls     The entity class returned by the query.
+     * @param query   The query.
+     *
+     * @return The query.
+     */
+    <E> @NotNull TypedQuery<E> apply(@NotNull Session session, @NotNull Class<E> cls, @NotNull TypedQuery<E> query) {
+        if(!joins.isEmpty()) query.setHint(LOAD_GRAPH, createGraph(session, cls));
+        return query;
+    }
+
+    private <E> @NotNull EntityGraph<E> createGraph(@NotNull Session session, @NotNull Class<E> cls) {
+        EntityGraph<E>           graph     = session.createEntityGraph(cls);
+        Map<String, Subgraph<?>> subgraphs = new HashMap<>();
+
+        for(String path : joins) {
+            String[]    parts = path.split("\\.");
+            Subgraph<?> sub   = null;
+            String      key   = "";
+
+            for(int i = 0; i < (parts.length - 1); i++) {
+                Subgraph<?> parent = sub;
+                String      name   = parts[i];
+                key = (key + "." + name);
+                sub = subgraphs.computeIfAbsent(key, k -> ((parent == null) ? graph.addSubgraph(name) : parent.addSubgraph(name)));
+            }
+
+            if(sub == null) graph.addAttributeNodes(parts[parts.length - 1]);
+            else sub.addAttributeNodes(parts[parts.length - 1]);
+        }
+
+        return graph;
+    }
+
+    public static @NotNull FetchPlan batch(String @NotNull ... paths) {
+        return NONE.andBatch(paths);
+    }
+
+    /**
+     * Returns the default plan for the given entity class, or {@link #NONE} if one has not been set.
+     *
+     * @param cls The entity class.
+     *
+     * @return The plan.
+     */
+    public static @NotNull FetchPlan forClass(@NotNull Class<?> cls) {
+        return DEFAULTS.getOrDefault(cls, NONE);
+    }
+
+    public static @NotNull FetchPlan join(String @NotNull ... paths) {
+        return NONE.andJoin(paths);
+    }
+
+    /**
+     * Sets the plan used for the given entity class when a call does not give one.
+     *
+     * @param cls  The entity class.
+     * @param plan The plan or <code>null</code> to remove it.
+     */
+    public static void setDefault(@NotNull Class<?> cls, @Nullable FetchPlan plan) {
+        if((plan == null) || plan.isEmpty()) DEFAULTS.remove(cls);
+        else DEFAULTS.put(cls, plan);
+    }
+
+    private static @NotNull List<String> concat(@NotNull List<String> list, String @NotNull ... paths) {
+        return Stream.concat(list.stream(), Arrays.stream(paths)).distinct().collect(Collectors.toList());
+    }
+
+    private static @NotNull String getJoinFetchClause(@NotNull String path) {
+        StringBuilder sb    = new StringBuilder();
+        String        alias = "e";
+        String[]      parts = path.split("\\.");
+
+        for(int i = 0; i < parts.length; i++) {
+            sb.append(String.format(" left join fetch %s.%s f%d", alias, parts[i], i));
+            alias = ("f" + i);
+        }
+
+        return sb.toString();
+    }
+}
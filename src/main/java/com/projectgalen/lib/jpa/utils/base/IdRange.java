@@ -0,0 +1,120 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: IdRange.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import org.hibernate.Session;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.projectgalen.lib.jpa.utils.base.Utils.*;
+
+/**
+ * A contiguous range of values of a single numeric {@link jakarta.persistence.Id} field used to split a query into partitions that can be run
+ * independently of each other.
+ */
+@SuppressWarnings({ "unchecked", "rawtypes" })
+final class IdRange {
+    private final Field idField;
+    private final long  low;
+    private final long  high;
+
+    IdRange(@NotNull Field idField, long low, long high) {
+        this.idField = idField;
+        this.low     = low;
+        this.high    = high;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    public @NotNull Map<String, Object> getParams(@NotNull Map<String, Object> params) {
+        Map<String, Object> prms = new TreeMap<>(params);
+        prms.put("pgLow", toIdType(low));
+        prms.put("pgHigh", toIdType(high));
+        return prms;
+    }
+
+    public @NotNull String getWhereClause(@NotNull String where) {
+        String w = Utils.getWhereClause(where);
+        String r = String.format("(e.%s between :pgLow and :pgHigh)", idField.getName());
+        return (w.isEmpty() ? ("where " + r) : String.format("where (%s) and %s", w.substring(5).trim(), r));
+    }
+
+    private @NotNull Object toIdType(long value) {
+        Class<?> t = idField.getType();
+        if((t == int.class) || (t == Integer.class)) return (int)value;
+        if((t == short.class) || (t == Short.class)) return (short)value;
+        return value;
+    }
+
+    /**
+     * Splits the rows of the given entity class matching the where clause into at most <code>count</code> ranges of roughly equal width. If the
+     * entity class does not have a single numeric ID field, or there are no matching rows, then an empty list is returned.
+     *
+     * @param session The JPA session to use.
+     * @param cls     The entity class.
+     * @param where   The where clause. (An empty string means all rows.)
+     * @param params  The parameters for the where clause.
+     * @param count   The maximum number of ranges.
+     *
+     * @return The list of ranges in ascending order.
+     */
+    static @NotNull List<IdRange> split(@NotNull Session session, @NotNull Class<?> cls, @NotNull String where, @NotNull Map<String, Object> params, int count) {
+        Field         f      = getNumericIdField(cls);
+        List<IdRange> ranges = new ArrayList<>();
+        if(f == null) return ranges;
+
+        String ql     = String.format("select new list(min(e.%1$s), max(e.%1$s)) %2$s %3$s", f.getName(), getFromClause(cls), Utils.getWhereClause(where));
+        List   bounds = withQueryGet(session, List.class, ql, params, 0, 1, (s, q) -> q.getSingleResult());
+        if((bounds == null) || (bounds.size() != 2) || (bounds.get(0) == null) || (bounds.get(1) == null)) return ranges;
+
+        /*
+         * The span and step are unsigned so that IDs covering most of the long range don't overflow. A span of zero means all 2^64 values.
+         */
+        long lo   = ((Number)bounds.get(0)).longValue();
+        long hi   = ((Number)bounds.get(1)).longValue();
+        long span = ((hi - lo) + 1);
+        long n    = (((span != 0) && (Long.compareUnsigned(span, count) < 0)) ? span : Math.max(1, count));
+        long step = (Long.divideUnsigned(span - 1, n) + 1);
+
+        for(long start = lo; ; start += step) {
+            if(Long.compareUnsigned(hi - start, step - 1) <= 0) {
+                ranges.add(new IdRange(f, start, hi));
+                break;
+            }
+            ranges.add(new IdRange(f, start, (start + step - 1)));
+        }
+
+        return ranges;
+    }
+}
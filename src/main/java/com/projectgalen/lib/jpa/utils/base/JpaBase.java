@@ -48,11 +48,15 @@ import static com.projectgalen.lib.utils.reflection.Reflection2.getMethods;
 @SuppressWarnings({ "unused", "unchecked", "SameParameterValue", "UnusedReturnValue", "RedundantCast" })
 public class JpaBase<E> {
 
-    protected final @Transient EventListeners updateEventListeners = new EventListeners();
-    protected final @Transient String         syncLock             = UUID.randomUUID().toString();
+    protected final @Transient EventListeners                          updateEventListeners = new EventListeners();
+    protected final @Transient String                                  syncLock             = UUID.randomUUID().toString();
     protected final @Transient Map<String, List<? extends JpaBase<?>>> cachedToManyMap      = new TreeMap<>();
+    protected final @Transient Map<String, Object>                     changedFields        = new TreeMap<>();
 
-    @Transient JpaState jpaState;
+    @Transient       JpaState              jpaState;
+    @Transient       boolean               listed;
+    @Transient       String                factoryName       = SessionFactories.DEFAULT;
+    @Transient final Map<String, Class<?>> cachedToManyTypes = new TreeMap<>();
 
     public JpaBase() {
         jpaState = CURRENT;
@@ -68,11 +72,20 @@ public class JpaBase<E> {
     }
 
     public @Transient E delete() {/*@f0*/
-        synchronized(syncLock) { Utils.doLocked(() -> { switch(jpaState) { case NEW -> removeFromDirtyList(this); case CURRENT -> addToDirtyList(this); } jpaState = DELETED; }); return (E)this; }
+        synchronized(syncLock) { Utils.doLocked(() -> { switch(jpaState) { case NEW -> removeFromDirtyList(this); case CURRENT -> addToDirtyList(this); } jpaState = DELETED; changedFields.clear(); }); return (E)this; }
     }/*@f1*/
 
     public @Transient E getCachedVersion() {
-        synchronized(syncLock) { return Utils.locked(() -> (E)Utils.replaceWithCached(this)); }
+        synchronized(syncLock) { return Utils.locked(() -> (E)Utils.replaceWithCached(factoryName, this)); }
+    }
+
+    /**
+     * Returns the persisted fields that have been changed since the entity was last saved along with their values at that time.
+     *
+     * @return A map of the original values keyed by the name of the field.
+     */
+    public @Transient @NotNull Map<String, Object> getChangedFields() {
+        synchronized(syncLock) { return Collections.unmodifiableMap(new TreeMap<>(changedFields)); }
     }
 
     public @Transient @NotNull JpaState getJpaState() {
@@ -110,7 +123,10 @@ public class JpaBase<E> {
     }
 
     public @Transient void resetInToManyCache(@NotNull String key) {
-        synchronized(syncLock) { cachedToManyMap.remove(key); }
+        synchronized(syncLock) {
+            cachedToManyMap.remove(key);
+            cachedToManyTypes.remove(key);
+        }
     }
 
     public @Transient E saveChanges(boolean deep) {
@@ -126,25 +142,41 @@ public class JpaBase<E> {
     }
 
     public @Transient E saveChanges(@NotNull Session session, boolean deep) {
-        if(deep) getToOneStream().forEach(e -> e.saveChanges(session, true));
+        if(deep) {
+            saveGraph(session, this);
+            return (E)this;
+        }
         synchronized(syncLock) {
             if(jpaState != CURRENT) {
                 Utils.doLocked(() -> {
+                    journal(this);
                     JpaState oldState = jpaState;
+                    Object   managed  = null;
 
                     switch(jpaState) {/*@f0*/
-                        case NEW     -> { session.persist(this); jpaState = CURRENT;    }
-                        case DIRTY   -> { session.merge(this);   jpaState = CURRENT;    }
-                        case DELETED -> { session.remove(this);  removeFromCache(this); }
+                        case NEW     -> { factoryName = factoryOf(session); session.persist(this);              jpaState = CURRENT; }
+                        case DIRTY   -> {                                   managed = saveDirty(session, this);                     }
+                        case DELETED -> {                                   session.remove(this);                                   }
                     }/*@f1*/
 
                     removeFromDirtyList(this);
                     session.flush();
 
-                    if(oldState != DELETED) session.refresh(this);
-                    if(oldState == NEW) addToCache(this);
-
-                    fireUpdatedEvent();
+                    if(managed != null) copyGenerated(this, managed);
+                    if(oldState != DELETED) refresh(session, this, oldState);
+
+                    /* As with Utils.save, the entity cache and the listeners only hear about the change once it is committed. */
+                    afterCommit(session, () -> {
+                        doLocked(() -> {
+                            if(oldState == NEW) addToCache(this);
+                            else if(oldState == DELETED) removeFromCache(this);
+                        });
+                        UpdateListeners.batch(null, this::fireUpdatedEvent);
+                    });
+
+                    QueryCache.invalidate(session, Set.of(getClass()));
+                    CacheInvalidation.publish(session, List.of(this));
+                    ReadRouting.pin();
                 });
             }
         }
@@ -157,13 +189,33 @@ public class JpaBase<E> {
         }
     }
 
+    /**
+     * Inserts this entity or, if a row with the same upsert key already exists, updates that row in a single statement. See
+     * {@link Utils#upsert(Session, Class, Collection, int)}.
+     *
+     * @param session The JPA session to use.
+     *
+     * @return This entity or the instance already in the entity cache for the same row.
+     */
+    public @Transient E upsert(@NotNull Session session) {
+        synchronized(syncLock) { return (E)Utils.upsert(session, (Class<JpaBase<?>>)getClass(), List.of(this), 1).get(0); }
+    }
+
+    public @Transient E upsert() {
+        return HibernateUtil.withSessionGet(this::upsert);
+    }
+
     protected @Transient void fireUpdatedEvent() {
+        OffHeapCache.update(this);
         JpaUpdateEvent event = new JpaUpdateEvent(this);
         updateEventListeners.forEach(JpaUpdateListener.class, l -> l.entityUpdated(event));
+        UpdateListeners.entityUpdated(this);
     }
 
     protected <T extends JpaBase<T>> @Transient @NotNull List<T> getCachedToMany(@NotNull Class<T> cls, @NotNull String key, @NotNull String hql, @NotNull Map<String, Object> prms) {
         synchronized(syncLock) {
+            cachedToManyTypes.put(key, cls);
+            CacheInvalidation.addToManyOwner(cls, this);
             return (List<T>)cachedToManyMap.computeIfAbsent(key, k -> HibernateUtil.fetch(cls, hql, prms));
         }
     }
@@ -193,12 +245,41 @@ public class JpaBase<E> {
     }
 
     private void setFieldValue(@NotNull Field fld, @Nullable Object newValue) {
-        if(!Objects.equals(getPropertyValue(fld), newValue)) {
+        Object oldValue = getPropertyValue(fld);
+        if(!Objects.equals(oldValue, newValue)) {
             Reflection.setFieldValue(fld, this, newValue);
-            if(jpaState == CURRENT) {
-                jpaState = DIRTY;
-                Utils.doLocked(() -> addToDirtyList(this));
+            if((jpaState == CURRENT) || (jpaState == DIRTY)) {
+                if(!changedFields.containsKey(fld.getName())) changedFields.put(fld.getName(), oldValue);
+                else if(Objects.equals(changedFields.get(fld.getName()), newValue)) changedFields.remove(fld.getName());
+
+                if(changedFields.isEmpty()) {
+                    jpaState = CURRENT;
+                    Utils.doLocked(() -> removeFromDirtyList(this));
+                }
+                else if(jpaState == CURRENT) {
+                    jpaState = DIRTY;
+                    Utils.doLocked(() -> addToDirtyList(this));
+                }
             }
         }
     }
+
+    /**
+     * Drops the cached to-many lists whose elements are of the given entity type.
+     */
+    @Transient void resetToManyCache(@NotNull Class<?> cls) {
+        synchronized(syncLock) {
+            cachedToManyTypes.entrySet().removeIf(e -> {
+                boolean match = (e.getValue().isAssignableFrom(cls) || cls.isAssignableFrom(e.getValue()));
+                if(match) cachedToManyMap.remove(e.getKey());
+                return match;
+            });
+        }
+    }
+
+    @Transient void patchPersistedFields(@NotNull Map<String, Object> values) {
+        synchronized(syncLock) {
+            values.forEach((n, v) -> Reflection.setFieldValue(getPersistedField(getClass(), n), this, v));
+        }
+    }
 }
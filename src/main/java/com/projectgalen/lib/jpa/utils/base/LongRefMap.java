@@ -0,0 +1,157 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: LongRefMap.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * An open-addressing hash map from a primitive <code>long</code> to a cache reference used by the entity cache for entity classes with a single
+ * numeric ID so that lookups don't box the ID, build a string key, or walk a tree. Collisions are resolved by linear probing and removals shift the
+ * following entries back so no tombstones are left behind. This class is not thread-safe; the entity cache only uses it while holding its lock.
+ */
+@SuppressWarnings("unchecked")
+final class LongRefMap {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[]                      keys;
+    private WeakReference<JpaBase<?>>[] refs;
+    private int                         mask;
+    private int                         size;
+
+    public LongRefMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    public @Nullable WeakReference<JpaBase<?>> get(long key) {
+        for(int i = (hash(key) & mask); refs[i] != null; i = ((i + 1) & mask)) if(keys[i] == key) return refs[i];
+        return null;
+    }
+
+    public @Nullable WeakReference<JpaBase<?>> put(long key, @NotNull WeakReference<JpaBase<?>> ref) {
+        int i = (hash(key) & mask);
+        for(; refs[i] != null; i = ((i + 1) & mask)) {
+            if(keys[i] == key) {
+                WeakReference<JpaBase<?>> old = refs[i];
+                refs[i] = ref;
+                return old;
+            }
+        }
+        keys[i] = key;
+        refs[i] = ref;
+        if(++size > (refs.length >> 1)) rehash(refs.length << 1);
+        return null;
+    }
+
+    public @Nullable WeakReference<JpaBase<?>> remove(long key) {
+        for(int i = (hash(key) & mask); refs[i] != null; i = ((i + 1) & mask)) {
+            if(keys[i] == key) {
+                WeakReference<JpaBase<?>> old = refs[i];
+                delete(i);
+                return old;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes every entry whose reference matches the predicate.
+     *
+     * @param predicate The predicate.
+     *
+     * @return <code>true</code> if any entries were removed.
+     */
+    public boolean removeIf(@NotNull Predicate<WeakReference<JpaBase<?>>> predicate) {
+        long[]                      oldKeys = keys;
+        WeakReference<JpaBase<?>>[] oldRefs = refs;
+        int                         oldSize = size;
+        int                         count   = 0;
+
+        for(WeakReference<JpaBase<?>> ref : oldRefs) if((ref != null) && !predicate.test(ref)) count++;
+        if(count == oldSize) return false;
+
+        allocate(tableSizeFor(count));
+        for(int i = 0; i < oldRefs.length; i++) if((oldRefs[i] != null) && !predicate.test(oldRefs[i])) insert(oldKeys[i], oldRefs[i]);
+        return true;
+    }
+
+    public void replaceAll(@NotNull UnaryOperator<WeakReference<JpaBase<?>>> function) {
+        for(int i = 0; i < refs.length; i++) if(refs[i] != null) refs[i] = function.apply(refs[i]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        refs = new WeakReference[capacity];
+        mask = (capacity - 1);
+        size = 0;
+    }
+
+    /**
+     * Empties slot i and then moves back any entry after it, up to the next empty slot, that can no longer be found because of the gap.
+     */
+    private void delete(int i) {
+        size--;
+        for(int j = ((i + 1) & mask); refs[j] != null; j = ((j + 1) & mask)) {
+            int home = (hash(keys[j]) & mask);
+            if(((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                refs[i] = refs[j];
+                i       = j;
+            }
+        }
+        refs[i] = null;
+    }
+
+    private void insert(long key, @NotNull WeakReference<JpaBase<?>> ref) {
+        int i = (hash(key) & mask);
+        while(refs[i] != null) i = ((i + 1) & mask);
+        keys[i] = key;
+        refs[i] = ref;
+        size++;
+    }
+
+    private void rehash(int capacity) {
+        long[]                      oldKeys = keys;
+        WeakReference<JpaBase<?>>[] oldRefs = refs;
+
+        allocate(capacity);
+        for(int i = 0; i < oldRefs.length; i++) if(oldRefs[i] != null) insert(oldKeys[i], oldRefs[i]);
+    }
+
+    private static int hash(long key) {
+        long h = (key * 0x9E3779B97F4A7C15L);
+        return (int)(h ^ (h >>> 32));
+    }
+
+    private static int tableSizeFor(int count) {
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, count) * 4 - 1));
+    }
+}
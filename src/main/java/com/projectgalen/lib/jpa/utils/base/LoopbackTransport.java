@@ -0,0 +1,73 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: LoopbackTransport.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.interfaces.InvalidationTransport;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * An {@link InvalidationTransport} that delivers messages, on the sending thread, to every other open transport in the same group in this JVM. A
+ * message is never delivered back to the transport that sent it. It is meant for tests.
+ */
+@SuppressWarnings("unused")
+public final class LoopbackTransport implements InvalidationTransport {
+    private static final Map<String, CopyOnWriteArrayList<LoopbackTransport>> GROUPS = new ConcurrentHashMap<>();
+
+    private final    String           group;
+    private volatile Consumer<byte[]> receiver;
+
+    public LoopbackTransport() {
+        this("default");
+    }
+
+    public LoopbackTransport(@NotNull String group) {
+        this.group = group;
+    }
+
+    public @Override void close() {
+        Optional.ofNullable(GROUPS.get(group)).ifPresent(l -> l.remove(this));
+        receiver = null;
+    }
+
+    public @NotNull String getGroup() {
+        return group;
+    }
+
+    public @Override void open(@NotNull Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+        GROUPS.computeIfAbsent(group, k -> new CopyOnWriteArrayList<>()).addIfAbsent(this);
+    }
+
+    public @Override void send(byte @NotNull [] message) {
+        Optional.ofNullable(GROUPS.get(group)).ifPresent(l -> l.forEach(t -> {
+            Consumer<byte[]> r = t.receiver;
+            if((t != this) && (r != null)) r.accept(message.clone());
+        }));
+    }
+}
@@ -0,0 +1,294 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: OffHeapCache.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.errors.DaoException;
+import com.projectgalen.lib.utils.helpers.Null;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static com.projectgalen.lib.jpa.utils.base.Utils.msgs;
+import static com.projectgalen.lib.jpa.utils.enums.JpaState.CURRENT;
+import static com.projectgalen.lib.jpa.utils.enums.JpaState.DELETED;
+
+/**
+ * An optional second tier of the entity cache that keeps the serialized state of entities of selected classes in direct (off-heap) buffers. When an
+ * entity of one of those classes is not in the entity cache, usually because the garbage collector cleared its weak reference, it is rebuilt from its
+ * serialized state instead of being read from the database again. This is meant for large tables that rarely change, such as codes and catalogs.
+ * <p>
+ * The buffers are used as a ring of fixed-size segments. New entries are appended to the current segment and when the ring is full the oldest
+ * segment is reused, dropping every entry in it. Entries are replaced whenever their entity is saved and dropped when it is deleted.
+ * <p>
+ * Entries are kept apart by the name of the session factory the entity was read from, like the entity cache.
+ * <p>
+ * The lock order is the entity cache lock first, then this class's monitor. {@link #restore(String, Class, String)} adds to the entity cache so it takes the
+ * entity cache lock before the monitor. Nothing done while holding the monitor takes the entity cache lock. Entities are serialized before the
+ * monitor is taken, each into a buffer of its own.
+ * <p>
+ * This uses {@link ByteBuffer#allocateDirect(int)} rather than <code>java.lang.foreign.MemorySegment</code>, which is still a preview API in Java 21.
+ */
+@SuppressWarnings("unused")
+public final class OffHeapCache {
+    public static final long DEFAULT_CAPACITY = (64L * 1024 * 1024);
+    public static final int  DEFAULT_SEGMENT  = (4 * 1024 * 1024);
+
+    private static final Map<Class<?>, Map<String, Loc>> INDEX     = new HashMap<>();
+    private static final Set<String>                     RESTORING = new HashSet<>();
+
+    private static volatile Set<Class<?>> enabled     = Set.of();
+    private static          long          capacity    = DEFAULT_CAPACITY;
+    private static          int           segmentSize = DEFAULT_SEGMENT;
+    private static          ByteBuffer[]  segments    = null;
+    private static          long[]        generations = null;
+    private static          int           head        = 0;
+    private static          long          hits        = 0;
+    private static          long          misses      = 0;
+
+    private OffHeapCache() { }
+
+    /**
+     * Drops every entry and frees the buffers. They are allocated again when an entity is next stored.
+     */
+    public static synchronized void clear() {
+        INDEX.clear();
+        segments    = null;
+        generations = null;
+        head        = 0;
+    }
+
+    /**
+     * Sets the total size of the off-heap buffers and the size of each segment. This drops every entry.
+     *
+     * @param capacityBytes The total number of bytes.
+     * @param segmentBytes  The number of bytes in each segment. This is also the largest serialized entity that can be stored.
+     */
+    public static synchronized void configure(long capacityBytes, int segmentBytes) {
+        clear();
+        segmentSize = Math.max(1024, segmentBytes);
+        capacity    = Math.max(segmentSize * 2L, capacityBytes);
+    }
+
+    public static synchronized void disable(@NotNull Class<?> cls) {
+        Set<Class<?>> set = new HashSet<>(enabled);
+        set.remove(cls);
+        enabled = Collections.unmodifiableSet(set);
+        INDEX.remove(cls);
+    }
+
+    /**
+     * Keeps the serialized state of entities of the given classes off-heap.
+     *
+     * @param classes The entity classes. Every persisted field must be supported by the entity snapshot format.
+     *
+     * @throws DaoException If one of the classes is not supported.
+     */
+    public static synchronized void enable(Class<?> @NotNull ... classes) {
+        for(Class<?> cls : classes) if(!EntityCodec.get(cls).isSupported()) throw new DaoException(msgs.format("msg.err.not_supported", cls.getName()));
+        Set<Class<?>> set = new HashSet<>(enabled);
+        set.addAll(Arrays.asList(classes));
+        enabled = Collections.unmodifiableSet(set);
+    }
+
+    public static synchronized long getCapacity() {
+        return capacity;
+    }
+
+    public static synchronized int getEntryCount() {
+        return INDEX.values().stream().mapToInt(Map::size).sum();
+    }
+
+    public static synchronized long getHitCount() {
+        return hits;
+    }
+
+    public static synchronized long getMissCount() {
+        return misses;
+    }
+
+    public static synchronized int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Drops every entry for the given class. This is done when rows are changed in bulk since the changed rows are not known.
+     *
+     * @param cls The entity class.
+     */
+    public static synchronized void invalidate(@NotNull Class<?> cls) {
+        INDEX.remove(cls);
+    }
+
+    public static boolean isEnabled(@NotNull Class<?> cls) {
+        return enabled.contains(cls);
+    }
+
+    private static synchronized boolean isStored(@NotNull Class<?> cls, @NotNull String key) {
+        Loc loc = Null.getIfNotNull(INDEX.get(cls), m -> m.get(key));
+        return ((loc != null) && (loc.generation == generations[loc.segment]));
+    }
+
+    /**
+     * Appends the serialized entity to the ring and indexes it.
+     *
+     * @param onlyIfPresent If true then the entry is only replaced if it is still indexed, so that an entity evicted while it was being serialized
+     *                      isn't put back.
+     */
+    private static synchronized void put(@NotNull Class<?> cls, @NotNull String key, byte @NotNull [] bytes, boolean onlyIfPresent) {
+        Map<String, Loc> m = (onlyIfPresent ? INDEX.get(cls) : INDEX.computeIfAbsent(cls, k -> new HashMap<>()));
+        if((m == null) || (onlyIfPresent && !m.containsKey(key))) return;
+
+        if(bytes.length > segmentSize) {
+            m.remove(key);
+            return;
+        }
+
+        if(segments == null) {
+            segments    = new ByteBuffer[(int)Math.max(2, capacity / segmentSize)];
+            generations = new long[segments.length];
+            head        = 0;
+        }
+        if(segments[head] == null) segments[head] = ByteBuffer.allocateDirect(segmentSize);
+        if(segments[head].remaining() < bytes.length) {
+            head = ((head + 1) % segments.length);
+            if(segments[head] == null) segments[head] = ByteBuffer.allocateDirect(segmentSize);
+            segments[head].clear();
+            generations[head]++;
+        }
+
+        ByteBuffer segment = segments[head];
+        int        offset  = segment.position();
+        segment.put(bytes);
+        m.put(key, new Loc(head, generations[head], offset, bytes.length));
+    }
+
+    /**
+     * Returns the key of an entry, which is the primary key qualified by the name of the session factory.
+     */
+    private static @NotNull String key(@NotNull String factory, @NotNull String pkey) {
+        return (factory + "/" + pkey);
+    }
+
+    /**
+     * Serializes the entity into a buffer of its own so that this can be done without holding any lock.
+     */
+    private static byte @NotNull [] serialize(@NotNull JpaBase<?> entity) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(DataOutputStream out = new DataOutputStream(bytes)) {
+            EntityCodec.get(entity.getClass()).write(out, entity);
+        }
+        catch(IOException e) {
+            throw new DaoException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static void remove(@NotNull JpaBase<?> entity) {
+        remove(entity.factoryName, entity.getClass(), entity.getPKey());
+    }
+
+    static synchronized void remove(@NotNull String factory, @NotNull Class<?> cls, @NotNull String pkey) {
+        if(isEnabled(cls)) Null.doIfNotNull(INDEX.get(cls), m -> m.remove(key(factory, pkey)));
+    }
+
+    /**
+     * Rebuilds an entity from its serialized state and adds it to the entity cache. References to other entities are resolved from the entity cache,
+     * or this cache, and if one can't be then nothing is returned and the entity will be read from the database. The entity cache lock is taken, if
+     * the caller doesn't already hold it, before this class's monitor.
+     *
+     * @param factory The name of the session factory the entity was read from.
+     * @param cls     The entity class.
+     * @param pkey    The primary key of the entity.
+     *
+     * @return The entity or null if it is not here.
+     */
+    static @Nullable JpaBase<?> restore(@NotNull String factory, @NotNull Class<?> cls, @NotNull String pkey) {
+        if(!isEnabled(cls)) return null;
+        String key = key(factory, pkey);
+        return Utils.locked(() -> {
+            synchronized(OffHeapCache.class) {
+                Map<String, Loc> m   = INDEX.get(cls);
+                Loc              loc = ((m == null) ? null : m.get(key));
+
+                if((loc == null) || (loc.generation != generations[loc.segment])) {
+                    if(loc != null) m.remove(key);
+                    misses++;
+                    return null;
+                }
+                if(!RESTORING.add(key)) return null;
+
+                try {
+                    ByteBuffer buffer = segments[loc.segment].duplicate().limit(loc.offset + loc.length).position(loc.offset);
+                    JpaBase<?> entity = EntityCodec.get(cls).read(buffer, (t, ids) -> Utils.getCached(factory, (Class<JpaBase<?>>)t, ids));
+                    if(entity == null) {
+                        misses++;
+                        return null;
+                    }
+                    hits++;
+                    entity.factoryName = factory;
+                    return Utils.addToCache(entity);
+                }
+                finally {
+                    RESTORING.remove(key);
+                }
+            }
+        });
+    }
+
+    /**
+     * Serializes the entity into the off-heap buffers if its class is enabled and it is CURRENT.
+     *
+     * @param entity  The entity.
+     * @param replace If false and the entity is already here then nothing is done.
+     */
+    static void store(@NotNull JpaBase<?> entity, boolean replace) {
+        Class<?> cls = entity.getClass();
+        if(!isEnabled(cls) || (entity.jpaState != CURRENT)) return;
+
+        String key = key(entity.factoryName, entity.getPKey());
+        if(!replace && isStored(cls, key)) return;
+        put(cls, key, serialize(entity), false);
+    }
+
+    /**
+     * Called after an entity has been saved or deleted to replace or drop its entry. Entities that aren't in the off-heap tier, including ones that
+     * have just been evicted, are not added.
+     *
+     * @param entity The entity.
+     */
+    static void update(@NotNull JpaBase<?> entity) {
+        Class<?> cls = entity.getClass();
+        if(!isEnabled(cls)) return;
+
+        String key = key(entity.factoryName, entity.getPKey());
+        if(entity.jpaState == DELETED) remove(entity);
+        else if((entity.jpaState == CURRENT) && isStored(cls, key)) put(cls, key, serialize(entity), true);
+    }
+
+    private record Loc(int segment, long generation, int offset, int length) { }
+}
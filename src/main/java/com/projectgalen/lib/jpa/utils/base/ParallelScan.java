@@ -0,0 +1,216 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: ParallelScan.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.errors.DaoException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.projectgalen.lib.jpa.utils.base.Utils.*;
+
+/**
+ * Runs a large query as several smaller ones at the same time. The rows matching the where clause are split into ranges of the entity's numeric
+ * {@link jakarta.persistence.Id} (see {@link IdRange}) and each range is read in its own read-only session on its own thread. The results are returned
+ * as a stream that is either ordered by ID, with the ranges returned in order as each one is finished, or unordered, with the ranges returned as soon
+ * as they are finished. No more than <code>parallelism</code> finished ranges are held in memory at once.
+ * <p>
+ * Every range of one scan is read from the same place: the primary if the thread calling {@link #stream(boolean)} is pinned to it (see {@link
+ * ReadRouting#isPinned()}), otherwise one replica chosen when the scan starts, so the ranges don't come from replicas that are at different points.
+ * <p>
+ * Entity classes without a single numeric ID field are read with one query. The where clause must not include an <code>order by</code>.
+ *
+ * @param <E> The entity type.
+ */
+@SuppressWarnings("unused")
+public final class ParallelScan<E extends JpaBase<E>> {
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    private final Class<E>            cls;
+    private final String              where;
+    private final Map<String, Object> params;
+    private final int                 parallelism;
+    private final int                 partitions;
+    private final String              factoryName;
+    private final FetchPlan           plan;
+
+    public ParallelScan(@NotNull Class<E> cls, @NotNull String where, @NotNull Map<String, Object> params) {
+        this(cls, where, params, Runtime.getRuntime().availableProcessors(), 0, SessionFactories.DEFAULT, FetchPlan.forClass(cls));
+    }
+
+    private ParallelScan(@NotNull Class<E> cls, @NotNull String where, @NotNull Map<String, Object> params, int parallelism, int partitions, @NotNull String factoryName, @NotNull FetchPlan plan) {
+        this.cls         = cls;
+        this.where       = where;
+        this.params      = Collections.unmodifiableMap(new TreeMap<>(params));
+        this.parallelism = Math.max(1, parallelism);
+        this.partitions  = partitions;
+        this.factoryName = factoryName;
+        this.plan        = plan;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns the number of ID ranges the rows are split into. Unless it has been set this is four times the parallelism so that a range with more
+     * rows than the others doesn't leave the other threads idle for long.
+     *
+     * @return The number of ranges.
+     */
+    public int getPartitions() {
+        return ((partitions > 0) ? partitions : (parallelism * 4));
+    }
+
+    /**
+     * Runs the query and returns the entities as they are read. The stream should be closed if it isn't read to the end so that the remaining
+     * ranges are not read.
+     *
+     * @param ordered true to return the entities in ascending ID order, false to return them in whatever order the ranges finish.
+     *
+     * @return The stream of entities.
+     */
+    public @NotNull Stream<E> stream(boolean ordered) {
+        ReadRouting.Scope       scope  = ReadRouting.scope(factoryName);
+        List<Optional<IdRange>> ranges = scope.withSessionGet(s -> IdRange.split(s, cls, where, params, getPartitions())).stream().map(Optional::of).collect(Collectors.toList());
+        Scan                    scan   = new Scan(scope, (ranges.isEmpty() ? List.of(Optional.empty()) : ranges), ordered);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(scan, (ordered ? Spliterator.ORDERED : 0)), false).onClose(scan::close);
+    }
+
+    public @NotNull ParallelScan<E> withFactory(@NotNull String factoryName) {
+        return new ParallelScan<>(cls, where, params, parallelism, partitions, factoryName, plan);
+    }
+
+    public @NotNull ParallelScan<E> withFetchPlan(@NotNull FetchPlan plan) {
+        return new ParallelScan<>(cls, where, params, parallelism, partitions, factoryName, plan);
+    }
+
+    /**
+     * Returns a copy of this scan that reads the given number of ranges at the same time, each with its own session. The default is the number of
+     * available processors.
+     *
+     * @param parallelism The number of ranges read at the same time.
+     *
+     * @return The new scan.
+     */
+    public @NotNull ParallelScan<E> withParallelism(int parallelism) {
+        return new ParallelScan<>(cls, where, params, parallelism, partitions, factoryName, plan);
+    }
+
+    public @NotNull ParallelScan<E> withPartitions(int partitions) {
+        return new ParallelScan<>(cls, where, params, parallelism, partitions, factoryName, plan);
+    }
+
+    private @NotNull List<E> read(@NotNull ReadRouting.Scope scope, @NotNull Optional<IdRange> range, boolean ordered) {
+        String              w  = range.map(r -> r.getWhereClause(where)).orElseGet(() -> Utils.getWhereClause(where));
+        Map<String, Object> p  = range.map(r -> r.getParams(params)).orElse(params);
+        String              ql = String.format("%s %s%s", getFromClause(cls), w, (ordered ? getOrderBy() : ""));
+        return scope.withSessionGet(s -> Utils.stream(s, cls, ql, p, 0, 0, plan).filter(Objects::nonNull).collect(Collectors.toList()));
+    }
+
+    private @NotNull String getOrderBy() {
+        return Optional.ofNullable(getNumericIdField(cls)).map(f -> String.format(" order by e.%s", f.getName())).orElse("");
+    }
+
+    /**
+     * Submits the ranges to a thread pool no more than <code>parallelism</code> ahead of the consumer. In ordered mode the ranges are taken in the
+     * order they were submitted, otherwise in the order they complete.
+     */
+    private final class Scan implements Iterator<E> {
+        private final ReadRouting.Scope              scope;
+        private final List<Optional<IdRange>>        ranges;
+        private final boolean                        ordered;
+        private final ExecutorService                executor;
+        private final Deque<Future<List<E>>>         pending   = new ArrayDeque<>();
+        private final BlockingQueue<Future<List<E>>> completed = new LinkedBlockingQueue<>();
+        private       int                            next      = 0;
+        private       Iterator<E>                    current   = Collections.emptyIterator();
+
+        public Scan(@NotNull ReadRouting.Scope scope, @NotNull List<Optional<IdRange>> ranges, boolean ordered) {
+            this.scope    = scope;
+            this.ranges   = ranges;
+            this.ordered  = ordered;
+            this.executor = Executors.newFixedThreadPool(Math.min(parallelism, ranges.size()), r -> {
+                Thread t = new Thread(r, "ParallelScan-" + THREAD_NUMBER.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        public void close() {
+            executor.shutdownNow();
+            pending.forEach(f -> f.cancel(true));
+            pending.clear();
+        }
+
+        public @Override boolean hasNext() {
+            while(!current.hasNext()) {
+                submit();
+                if(pending.isEmpty()) return false;
+                current = take().iterator();
+            }
+            return true;
+        }
+
+        public @Override E next() {
+            if(!hasNext()) throw new NoSuchElementException();
+            return current.next();
+        }
+
+        private void submit() {
+            while((next < ranges.size()) && (pending.size() < parallelism)) {
+                Optional<IdRange>   range = ranges.get(next++);
+                FutureTask<List<E>> task  = new FutureTask<>(() -> read(scope, range, ordered)) {
+                    protected @Override void done() {
+                        if(!ordered) completed.add(this);
+                    }
+                };
+                pending.add(task);
+                executor.execute(task);
+            }
+            if(next == ranges.size()) executor.shutdown();
+        }
+
+        private @NotNull List<E> take() {
+            try {
+                Future<List<E>> f = (ordered ? pending.peek() : completed.take());
+                pending.remove(f);
+                return Objects.requireNonNull(f).get();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new DaoException(e);
+            }
+            catch(ExecutionException e) {
+                close();
+                throw ((e.getCause() instanceof RuntimeException r) ? r : new DaoException(e.getCause()));
+            }
+        }
+    }
+}
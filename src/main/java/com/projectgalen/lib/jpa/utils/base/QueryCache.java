@@ -0,0 +1,154 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: QueryCache.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.transaction.Synchronization;
+import org.hibernate.Session;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * An opt-in cache of the ID lists returned by the queries behind {@link com.projectgalen.lib.jpa.utils.HibernateUtil#fetch(Class, String, Map)} and
+ * {@link com.projectgalen.lib.jpa.utils.HibernateUtil#getFirst(Class, String, Map)}. Entries are keyed by the session factory, the query, its parameters,
+ * and the row range, and are dropped whenever an entity of any class named in the query is saved or deleted.
+ */
+@SuppressWarnings({ "unused", "rawtypes" })
+public final class QueryCache {
+    private static final Pattern                     WORD        = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*");
+    private static final Map<String, Set<Class<?>>>  QL_CLASSES  = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, AtomicLong>   GENERATIONS = new ConcurrentHashMap<>();
+    private static final LinkedHashMap<Key, Entry>   ENTRIES     = new LinkedHashMap<>(256, 0.75f, true);
+    private static       boolean                     enabled     = false;
+    private static       int                         maxEntries  = 1000;
+
+    private QueryCache() { }
+
+    public static synchronized void clear() {
+        ENTRIES.clear();
+        GENERATIONS.values().forEach(AtomicLong::incrementAndGet);
+    }
+
+    public static synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public static synchronized int getSize() {
+        return ENTRIES.size();
+    }
+
+    /**
+     * Removes all entries for queries that name the given entity class, or one of its superclasses.
+     *
+     * @param cls The entity class.
+     */
+    public static void invalidate(@NotNull Class<?> cls) {
+        GENERATIONS.forEach((c, g) -> { if(c.isAssignableFrom(cls)) g.incrementAndGet(); });
+        synchronized(QueryCache.class) {
+            ENTRIES.values().removeIf(e -> e.classes.stream().anyMatch(c -> c.isAssignableFrom(cls)));
+        }
+    }
+
+    public static synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    public static synchronized void setEnabled(boolean enabled) {
+        QueryCache.enabled = enabled;
+        if(!enabled) ENTRIES.clear();
+    }
+
+    public static synchronized void setMaxEntries(int maxEntries) {
+        QueryCache.maxEntries = Math.max(0, maxEntries);
+        trim();
+    }
+
+    private static @NotNull Set<Class<?>> getQueryClasses(@NotNull Session session, @NotNull String ql) {
+        return QL_CLASSES.computeIfAbsent(ql, k -> {
+            Map<String, Class<?>> entities = session.getMetamodel().getEntities().stream().collect(Collectors.toMap(EntityType::getName, EntityType::getJavaType, (a, b) -> a));
+            Set<Class<?>>         classes  = new HashSet<>();
+            Matcher               m        = WORD.matcher(k);
+            while(m.find()) Utils.opt(entities.get(m.group())).ifPresent(classes::add);
+            return Collections.unmodifiableSet(classes);
+        });
+    }
+
+    private static synchronized void trim() {
+        Iterator<Key> it = ENTRIES.keySet().iterator();
+        while((ENTRIES.size() > maxEntries) && it.hasNext()) { it.next(); it.remove(); }
+    }
+
+    /**
+     * Returns the cached ID lists for the query or, if there are none, runs the query and caches its results. Results are not cached if an entity
+     * of one of the query's classes was saved or deleted while the query was running, or if the session reads from a replica that may be behind.
+     */
+    static @NotNull List<List> getIds(@NotNull Session session, @NotNull String ql, @NotNull Map<String, Object> params, int startingRow, int maxRows, @NotNull Supplier<List<List>> query) {
+        Key key = new Key(Utils.factoryOf(session), ql, new TreeMap<>(params), startingRow, maxRows);
+
+        synchronized(QueryCache.class) {
+            Entry entry = ENTRIES.get(key);
+            if(entry != null) return entry.ids;
+        }
+
+        Set<Class<?>> classes = getQueryClasses(session, ql);
+        List<Long>    before  = classes.stream().map(c -> GENERATIONS.computeIfAbsent(c, k -> new AtomicLong()).get()).collect(Collectors.toList());
+        List<List>    ids     = Collections.unmodifiableList(new ArrayList<>(query.get()));
+        List<Long>    after   = classes.stream().map(c -> GENERATIONS.get(c).get()).collect(Collectors.toList());
+
+        synchronized(QueryCache.class) {
+            if(enabled && before.equals(after) && !ReadRouting.isReplicaSession(session)) {
+                ENTRIES.put(key, new Entry(ids, classes));
+                trim();
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * Invalidates the given entity classes now and again once the session's current transaction completes, so that queries run by other threads
+     * before the transaction commits are not left in the cache.
+     */
+    static void invalidate(@NotNull Session session, @NotNull Collection<Class<?>> classes) {
+        if(classes.isEmpty()) return;
+        classes.forEach(QueryCache::invalidate);
+        if(session.getTransaction().isActive()) session.getTransaction().registerSynchronization(new Synchronization() {
+            public @Override void afterCompletion(int status) {
+                classes.forEach(QueryCache::invalidate);
+            }
+
+            public @Override void beforeCompletion() { }
+        });
+    }
+
+    private record Key(@NotNull String factory, @NotNull String ql, @NotNull Map<String, Object> params, int startingRow, int maxRows) { }
+
+    private record Entry(@NotNull List<List> ids, @NotNull Set<Class<?>> classes) { }
+}
@@ -0,0 +1,244 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: QueryPublisher.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.utils.text.Text;
+import org.hibernate.Session;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A {@link Flow.Publisher} of the entities returned by a query. Rows are read in chunks only when the subscriber has asked for more so at most one
+ * chunk is held in memory at a time no matter how slow the subscriber is.
+ * <p>
+ * By default every chunk is read in its own read-only session (see {@link Utils#withReadSessionGet(String, com.projectgalen.lib.jpa.utils.interfaces.SessionFunction)})
+ * using the first row and maximum rows of the query, so no session or result set is held open between chunks. The query should have an
+ * <code>order by</code> so that the chunks don't overlap. With {@link #withSessionPerChunk(boolean)} set to false a single session is held open and
+ * the rows are streamed from one result set instead.
+ * <p>
+ * Each subscription reads and delivers its rows on the executor, one task at a time. Where the chunks are read is decided when {@link #subscribe(Flow.Subscriber)}
+ * is called: if the subscribing thread is pinned to the primary (see {@link ReadRouting#isPinned()}) then every chunk is read from the primary,
+ * otherwise every chunk is read from the same replica. The same goes for the session that is held open when there is one.
+ *
+ * @param <E> The entity type.
+ */
+@SuppressWarnings("unused")
+public final class QueryPublisher<E extends JpaBase<E>> implements Flow.Publisher<E> {
+    private final Class<E>            cls;
+    private final String              ql;
+    private final Map<String, Object> params;
+    private final int                 chunkSize;
+    private final boolean             sessionPerChunk;
+    private final Executor            executor;
+    private final String              factoryName;
+    private final FetchPlan           plan;
+
+    public QueryPublisher(@NotNull Class<E> cls, @NotNull String ql, @NotNull Map<String, Object> params) {
+        this(cls, ql, params, 500, true, ForkJoinPool.commonPool(), SessionFactories.DEFAULT, FetchPlan.forClass(cls));
+    }
+
+    private QueryPublisher(@NotNull Class<E> cls, @NotNull String ql, @NotNull Map<String, Object> params, int chunkSize, boolean sessionPerChunk, @NotNull Executor executor, @NotNull String factoryName, @NotNull FetchPlan plan) {
+        this.cls             = cls;
+        this.ql              = ql;
+        this.params          = Collections.unmodifiableMap(new LinkedHashMap<>(params));
+        this.chunkSize       = Math.max(1, chunkSize);
+        this.sessionPerChunk = sessionPerChunk;
+        this.executor        = executor;
+        this.factoryName     = factoryName;
+        this.plan            = plan;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public boolean isSessionPerChunk() {
+        return sessionPerChunk;
+    }
+
+    public @Override void subscribe(@NotNull Flow.Subscriber<? super E> subscriber) {
+        subscriber.onSubscribe(new QuerySubscription(Objects.requireNonNull(subscriber), ReadRouting.scope(factoryName)));
+    }
+
+    public @NotNull QueryPublisher<E> withChunkSize(int size) {
+        return new QueryPublisher<>(cls, ql, params, size, sessionPerChunk, executor, factoryName, plan);
+    }
+
+    public @NotNull QueryPublisher<E> withExecutor(@NotNull Executor executor) {
+        return new QueryPublisher<>(cls, ql, params, chunkSize, sessionPerChunk, executor, factoryName, plan);
+    }
+
+    public @NotNull QueryPublisher<E> withFactory(@NotNull String factoryName) {
+        return new QueryPublisher<>(cls, ql, params, chunkSize, sessionPerChunk, executor, factoryName, plan);
+    }
+
+    public @NotNull QueryPublisher<E> withFetchPlan(@NotNull FetchPlan plan) {
+        return new QueryPublisher<>(cls, ql, params, chunkSize, sessionPerChunk, executor, factoryName, plan);
+    }
+
+    /**
+     * Returns a copy of this publisher that either reads each chunk in its own session (true, the default) or holds one session and result set open
+     * until the last row has been delivered or the subscription is cancelled (false).
+     *
+     * @param sessionPerChunk True to release the session between chunks.
+     *
+     * @return The new publisher.
+     */
+    public @NotNull QueryPublisher<E> withSessionPerChunk(boolean sessionPerChunk) {
+        return new QueryPublisher<>(cls, ql, params, chunkSize, sessionPerChunk, executor, factoryName, plan);
+    }
+
+    private final class QuerySubscription implements Flow.Subscription, Runnable {
+        private final    Flow.Subscriber<? super E> subscriber;
+        private final    ReadRouting.Scope          scope;
+        private final    AtomicLong                 demand = new AtomicLong();
+        private final    AtomicInteger              wip    = new AtomicInteger();
+        private final    Deque<E>                   buffer = new ArrayDeque<>();
+        private volatile boolean                    cancelled;
+        private volatile Throwable                  badRequest;
+        private          boolean                    done;
+        private          boolean                    exhausted;
+        private          int                        offset;
+        private          Session                    session;
+        private          Stream<E>                  stream;
+        private          Iterator<E>                iterator;
+
+        public QuerySubscription(@NotNull Flow.Subscriber<? super E> subscriber, @NotNull ReadRouting.Scope scope) {
+            this.subscriber = subscriber;
+            this.scope      = scope;
+        }
+
+        public @Override void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        public @Override void request(long n) {
+            if(n <= 0) badRequest = new IllegalArgumentException(String.format("Non-positive request: %d", n));
+            else demand.getAndUpdate(d -> (((d + n) < 0) ? Long.MAX_VALUE : (d + n)));
+            schedule();
+        }
+
+        public @Override void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = wip.addAndGet(-missed);
+            }
+            while(missed != 0);
+        }
+
+        private void close() {
+            try {
+                if(stream != null) stream.close();
+            }
+            finally {
+                if(session != null) scope.closeSession(session);
+                stream   = null;
+                iterator = null;
+                session  = null;
+            }
+        }
+
+        private void drain() {
+            if(done) return;
+            try {
+                if(badRequest != null) {
+                    finish(badRequest);
+                }
+                else if(cancelled) {
+                    done = true;
+                    close();
+                }
+                else {
+                    while((demand.get() > 0) && !cancelled) {
+                        if(buffer.isEmpty() && !exhausted) fill();
+                        if(buffer.isEmpty()) break;
+                        subscriber.onNext(buffer.poll());
+                        demand.decrementAndGet();
+                    }
+                    if(buffer.isEmpty() && exhausted) finish(null);
+                    else if(cancelled) drain();
+                }
+            }
+            catch(Throwable t) {
+                finish(t);
+            }
+        }
+
+        private void fill() {
+            if(sessionPerChunk) {
+                List<E> chunk = scope.withSessionGet(s -> Utils.stream(s, cls, ql, params, offset, chunkSize, plan).collect(Collectors.toList()));
+                offset += chunk.size();
+                exhausted = (chunk.size() < chunkSize);
+                chunk.stream().filter(Objects::nonNull).forEach(buffer::add);
+            }
+            else {
+                if(iterator == null) open();
+                for(int i = 0; (i < chunkSize) && iterator.hasNext(); i++) buffer.add(iterator.next());
+                exhausted = !iterator.hasNext();
+                if(exhausted) close();
+            }
+        }
+
+        private void finish(Throwable error) {
+            done = true;
+            buffer.clear();
+            try {
+                close();
+            }
+            catch(Exception e) {
+                if(error == null) error = e;
+            }
+            if(error == null) subscriber.onComplete();
+            else subscriber.onError(error);
+        }
+
+        private void open() {
+            session  = scope.openSession();
+            stream   = Utils.stream(session, cls, getEntityQuery(), params, 0, 0, plan);
+            iterator = stream.iterator();
+        }
+
+        private void schedule() {
+            if(wip.getAndIncrement() == 0) executor.execute(this);
+        }
+
+        /**
+         * The entities themselves are selected, rather than just their IDs, so that they are streamed from the result set as they are read.
+         */
+        private @NotNull String getEntityQuery() {
+            String q = ql.trim();
+            if(Text.startsWithIgnoreCase(q, "where")) q = (Utils.getFromClause(cls) + " " + q);
+            return (Text.startsWithIgnoreCase(q, "from") ? ("select e " + q) : q);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: ReadAhead.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.errors.DaoException;
+import com.projectgalen.lib.jpa.utils.interfaces.PageLoader;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the pages of a paged query ahead of the consumer. The pages are loaded, one after the other, on a virtual thread and handed over through a
+ * queue holding at most <code>depth</code> pages, so that the database is reading page N+1 while the consumer works on page N. Closing the stream
+ * stops the reader; streams that are not read to the end should be closed.
+ * <p>
+ * Rows are addressed by position so the query should have an <code>order by</code> that gives every row a fixed place.
+ * <p>
+ * If the thread creating the stream is pinned to the primary (see {@link ReadRouting#isPinned()}) then the reader thread is pinned until the same
+ * time. The pages of an entity query are all read from the same place, the primary when pinned or otherwise one replica chosen when the stream is
+ * created.
+ */
+@SuppressWarnings({ "unused", "unchecked" })
+public final class ReadAhead {
+
+    private ReadAhead() { }
+
+    /**
+     * Returns the pages of a query, each read in its own read-only session, as they are loaded.
+     *
+     * @param cls      The entity class.
+     * @param ql       The query.
+     * @param params   The query parameters.
+     * @param pageSize The number of rows in each page.
+     * @param depth    The maximum number of pages read ahead of the consumer.
+     *
+     * @return The stream of pages.
+     */
+    public static <E extends JpaBase<E>> @NotNull Stream<List<E>> pages(@NotNull Class<E> cls, @NotNull String ql, @NotNull Map<String, Object> params, int pageSize, int depth) {
+        FetchPlan         plan  = FetchPlan.forClass(cls);
+        ReadRouting.Scope scope = ReadRouting.scope(SessionFactories.DEFAULT);
+        return pages((start, max) -> scope.withSessionGet(s -> Utils.stream(s, cls, ql, params, start, max, plan).collect(Collectors.toList())), pageSize, depth);
+    }
+
+    /**
+     * Returns the pages produced by the loader as they are loaded. Null rows, such as rows deleted after their page's IDs were read, are left out.
+     *
+     * @param loader   The page loader.
+     * @param pageSize The number of rows in each page.
+     * @param depth    The maximum number of pages read ahead of the consumer.
+     *
+     * @return The stream of pages.
+     */
+    public static <T> @NotNull Stream<List<T>> pages(@NotNull PageLoader<T> loader, int pageSize, int depth) {
+        Pipeline<T> pipeline = new Pipeline<>(loader, Math.max(1, pageSize), Math.max(1, depth));
+        return StreamSupport.stream(pipeline, false).onClose(pipeline::close);
+    }
+
+    public static <E extends JpaBase<E>> @NotNull Stream<E> stream(@NotNull Class<E> cls, @NotNull String ql, @NotNull Map<String, Object> params, int pageSize, int depth) {
+        return pages(cls, ql, params, pageSize, depth).flatMap(List::stream);
+    }
+
+    public static <T> @NotNull Stream<T> stream(@NotNull PageLoader<T> loader, int pageSize, int depth) {
+        return pages(loader, pageSize, depth).flatMap(List::stream);
+    }
+
+    private static final class Pipeline<T> extends Spliterators.AbstractSpliterator<List<T>> {
+        private static final Object END = new Object();
+
+        private final    PageLoader<T>         loader;
+        private final    int                   pageSize;
+        private final    BlockingQueue<Object> queue;
+        private final    Thread                reader;
+        private final    long                  pinnedUntil;
+        private volatile boolean               closed = false;
+        private          boolean               done   = false;
+
+        public Pipeline(@NotNull PageLoader<T> loader, int pageSize, int depth) {
+            super(Long.MAX_VALUE, (Spliterator.ORDERED | Spliterator.NONNULL));
+            this.loader      = loader;
+            this.pageSize    = pageSize;
+            this.queue       = new ArrayBlockingQueue<>(depth);
+            this.pinnedUntil = ReadRouting.getPinnedUntil();
+            this.reader      = Thread.ofVirtual().name("ReadAhead").start(this::read);
+        }
+
+        public void close() {
+            closed = true;
+            reader.interrupt();
+            queue.clear();
+        }
+
+        public @Override boolean tryAdvance(@NotNull Consumer<? super List<T>> action) {
+            if(done) return false;
+
+            Object o = take();
+            if(o == END) {
+                done = true;
+                return false;
+            }
+            if(o instanceof Throwable t) {
+                done = true;
+                close();
+                throw ((t instanceof RuntimeException r) ? r : new DaoException(t));
+            }
+
+            action.accept((List<T>)o);
+            return true;
+        }
+
+        /**
+         * Waits for room in the queue, giving up if the stream is closed.
+         */
+        private void put(@NotNull Object o) throws InterruptedException {
+            while(!closed && !queue.offer(o, 100, TimeUnit.MILLISECONDS)) {
+                /* The consumer is still working on earlier pages. */
+            }
+        }
+
+        private void read() {
+            ReadRouting.pinUntil(pinnedUntil);
+            try {
+                for(int start = 0; !closed; start += pageSize) {
+                    List<T> page = loader.load(start, pageSize);
+                    put(page.stream().filter(Objects::nonNull).collect(Collectors.toList()));
+                    if(page.size() < pageSize) break;
+                }
+                put(END);
+            }
+            catch(InterruptedException ignored) {
+                /* The stream was closed. */
+            }
+            catch(Throwable t) {
+                try {
+                    put(t);
+                }
+                catch(InterruptedException ignored) {
+                    /* The stream was closed. */
+                }
+            }
+        }
+
+        private @NotNull Object take() {
+            try {
+                return queue.take();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new DaoException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: ReadRouting.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.enums.ReplicaSelection;
+import com.projectgalen.lib.jpa.utils.errors.DaoException;
+import com.projectgalen.lib.jpa.utils.interfaces.SessionFunction;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.exception.JDBCConnectionException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes read-only sessions to replica {@link org.hibernate.SessionFactory}s registered in {@link SessionFactories}. After a thread saves something
+ * it is pinned to the primary for {@link #getPinMillis()} milliseconds so that it always reads its own writes. If a replica can't be reached then it
+ * is skipped for {@link #getDownMillis()} milliseconds and the read falls back to the primary.
+ */
+@SuppressWarnings("unused")
+public final class ReadRouting {
+    private static final Map<String, Route>   ROUTES       = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Long>    PINNED_UNTIL = ThreadLocal.withInitial(() -> 0L);
+    private static final Map<Session, String> REPLICAS     = new ConcurrentHashMap<>();
+    private static volatile long              pinMillis    = 5_000;
+    private static volatile long              downMillis   = 30_000;
+
+    private ReadRouting() { }
+
+    public static void clearReplicas() {
+        clearReplicas(SessionFactories.DEFAULT);
+    }
+
+    public static void clearReplicas(@NotNull String primary) {
+        ROUTES.remove(primary);
+    }
+
+    public static long getDownMillis() {
+        return downMillis;
+    }
+
+    public static long getPinMillis() {
+        return pinMillis;
+    }
+
+    /**
+     * Returns <code>true</code> if reads made by the current thread are going to the primary because it has recently saved something.
+     *
+     * @return <code>true</code> if the current thread is pinned to the primary.
+     */
+    public static boolean isPinned() {
+        return (PINNED_UNTIL.get() > System.currentTimeMillis());
+    }
+
+    /**
+     * Sends the current thread's reads to the primary for the next {@link #getPinMillis()} milliseconds. This is called automatically whenever
+     * entities are saved.
+     */
+    public static void pin() {
+        if(!ROUTES.isEmpty()) PINNED_UNTIL.set(System.currentTimeMillis() + pinMillis);
+    }
+
+    public static void setDownMillis(long millis) {
+        downMillis = millis;
+    }
+
+    public static void setPinMillis(long millis) {
+        pinMillis = millis;
+    }
+
+    public static void setReplicas(@NotNull ReplicaSelection selection, String @NotNull ... replicas) {
+        setReplicas(SessionFactories.DEFAULT, selection, replicas);
+    }
+
+    /**
+     * Sets the replicas that read-only sessions for the given primary are sent to.
+     *
+     * @param primary   The name of the primary factory.
+     * @param selection How a replica is chosen.
+     * @param replicas  The names of the replica factories. If none are given then all reads go to the primary.
+     */
+    public static void setReplicas(@NotNull String primary, @NotNull ReplicaSelection selection, String @NotNull ... replicas) {
+        if(replicas.length == 0) ROUTES.remove(primary);
+        else ROUTES.put(primary, new Route(selection, Arrays.stream(replicas).map(r -> new Replica(primary, r)).toArray(Replica[]::new)));
+    }
+
+    /**
+     * Ends the current thread's read-your-writes scope early so that its reads go to the replicas again.
+     */
+    public static void unpin() {
+        PINNED_UNTIL.remove();
+    }
+
+    /**
+     * Returns the time, in milliseconds, at which the current thread's pin ends so that it can be carried onto another thread with {@link
+     * #pinUntil(long)}.
+     *
+     * @return The time the pin ends. If it is in the past then the thread isn't pinned.
+     */
+    static long getPinnedUntil() {
+        return PINNED_UNTIL.get();
+    }
+
+    /**
+     * Returns the name of the primary factory if the session was opened from one of its replicas.
+     *
+     * @param session The JPA session.
+     *
+     * @return The name of the primary or null if the session wasn't opened from a replica.
+     */
+    static @Nullable String getPrimary(@NotNull Session session) {
+        return REPLICAS.get(session);
+    }
+
+    /**
+     * Returns <code>true</code> if the session was opened from a replica. What a replica returns may be behind the primary so it is not put in the
+     * {@link QueryCache} or the entity cache.
+     *
+     * @param session The JPA session.
+     *
+     * @return <code>true</code> if the session reads from a replica.
+     */
+    static boolean isReplicaSession(@NotNull Session session) {
+        return REPLICAS.containsKey(session);
+    }
+
+    /**
+     * Pins the current thread to the primary until the given time unless it is already pinned for longer.
+     *
+     * @param until The time, in milliseconds, returned by {@link #getPinnedUntil()} on the thread the pin is carried from.
+     */
+    static void pinUntil(long until) {
+        if(until > PINNED_UNTIL.get()) PINNED_UNTIL.set(until);
+    }
+
+    /**
+     * Captures the current thread's routing for reads that will be made on other threads, such as by a pool of workers or a reader thread. If the
+     * thread is pinned then every read made through the scope goes to the primary, and the pin is carried onto the thread making the read. Otherwise
+     * one replica is chosen now and used for every read so that the reads see the same data.
+     *
+     * @param primary The name of the primary factory.
+     *
+     * @return The scope.
+     */
+    static @NotNull Scope scope(@NotNull String primary) {
+        Route route       = ROUTES.get(primary);
+        long  pinnedUntil = PINNED_UNTIL.get();
+        return new Scope(primary, pinnedUntil, (((route == null) || (pinnedUntil > System.currentTimeMillis())) ? null : route.select()));
+    }
+
+    static <R> R withReadSessionGet(@NotNull String primary, @NotNull SessionFunction<R> function) {
+        return scope(primary).withSessionGet(function);
+    }
+
+    private static boolean isConnectionFailure(@Nullable Throwable t) {
+        for(; t != null; t = t.getCause()) {
+            if((t instanceof JDBCConnectionException) || (t instanceof SQLTransientConnectionException) || (t instanceof SQLNonTransientConnectionException)) return true;
+            if((t instanceof SQLException sqle) && (sqle.getSQLState() != null) && sqle.getSQLState().startsWith("08")) return true;
+        }
+        return false;
+    }
+
+    private static @NotNull Session openReadOnly(@NotNull SessionFactory factory) {
+        Session session = factory.openSession();
+        try {
+            session.setDefaultReadOnly(true);
+            session.beginTransaction();
+            return session;
+        }
+        catch(Exception e) {
+            session.close();
+            throw DaoException.makeDaoException(e);
+        }
+    }
+
+    private static final class Replica {
+        private final    String        primary;
+        private final    String        name;
+        private final    AtomicInteger busy = new AtomicInteger();
+        private volatile long          downUntil;
+
+        public Replica(@NotNull String primary, @NotNull String name) {
+            this.primary = primary;
+            this.name    = name;
+        }
+
+        public boolean isDown(long now) {
+            return (downUntil > now);
+        }
+
+        public <R> R withSessionGet(@NotNull SessionFunction<R> function) {
+            busy.incrementAndGet();
+            try {
+                return Utils.withSessionGet(SessionFactories.get(name), true, session -> {
+                    REPLICAS.put(session, primary);
+                    try {
+                        return function.apply(session);
+                    }
+                    finally {
+                        REPLICAS.remove(session);
+                    }
+                });
+            }
+            finally {
+                busy.decrementAndGet();
+            }
+        }
+    }
+
+    private record Route(@NotNull ReplicaSelection selection, Replica @NotNull [] replicas, @NotNull AtomicInteger next) {
+        public Route(@NotNull ReplicaSelection selection, Replica @NotNull [] replicas) {
+            this(selection, replicas, new AtomicInteger());
+        }
+
+        public @Nullable Replica select() {
+            long    now   = System.currentTimeMillis();
+            int     start = Math.floorMod(next.getAndIncrement(), replicas.length);
+            Replica best  = null;
+
+            for(int i = 0; i < replicas.length; i++) {
+                Replica r = replicas[(start + i) % replicas.length];
+                if(r.isDown(now)) continue;
+                if(selection == ReplicaSelection.ROUND_ROBIN) return r;
+                if((best == null) || (r.busy.get() < best.busy.get())) best = r;
+            }
+
+            return best;
+        }
+    }
+
+    /**
+     * See {@link #scope(String)}.
+     */
+    static final class Scope {
+        private final    String  primary;
+        private final    long    pinnedUntil;
+        private volatile Replica replica;
+        private          Replica held;
+
+        private Scope(@NotNull String primary, long pinnedUntil, @Nullable Replica replica) {
+            this.primary     = primary;
+            this.pinnedUntil = pinnedUntil;
+            this.replica     = replica;
+        }
+
+        /**
+         * Commits the transaction of a session opened by {@link #openSession()} and closes it.
+         *
+         * @param session The session.
+         */
+        public void closeSession(@NotNull Session session) {
+            try {
+                if(session.getTransaction().isActive()) session.getTransaction().commit();
+            }
+            finally {
+                REPLICAS.remove(session);
+                if(held != null) held.busy.decrementAndGet();
+                held = null;
+                session.close();
+            }
+        }
+
+        /**
+         * Opens a read-only session, with its transaction begun, from the same place {@link #withSessionGet(SessionFunction)} would read from. This is
+         * for reads that hold one session open across several calls, such as a result set streamed in chunks. Only one such session can be open at a
+         * time and it must be closed with {@link #closeSession(Session)}.
+         *
+         * @return The session.
+         */
+        public @NotNull Session openSession() {
+            Replica r = replica;
+            if(r != null) {
+                try {
+                    Session session = openReadOnly(SessionFactories.get(r.name));
+                    REPLICAS.put(session, primary);
+                    r.busy.incrementAndGet();
+                    held = r;
+                    return session;
+                }
+                catch(DaoException e) {
+                    if(!isConnectionFailure(e)) throw e;
+                    r.downUntil = (System.currentTimeMillis() + downMillis);
+                    replica     = null;
+                }
+            }
+            return openReadOnly(SessionFactories.get(primary));
+        }
+
+        /**
+         * Calls the function with a read-only session from this scope's replica, or from the primary if the thread was pinned when the scope was
+         * created or the replica can't be reached. Once the replica has failed the rest of the reads go to the primary.
+         *
+         * @param function The function.
+         * @param <R>      The type of the result.
+         *
+         * @return The result of the function.
+         */
+        public <R> R withSessionGet(@NotNull SessionFunction<R> function) {
+            long saved = PINNED_UNTIL.get();
+            if(pinnedUntil > saved) PINNED_UNTIL.set(pinnedUntil);
+            try {
+                Replica r = replica;
+                if(r != null) {
+                    try {
+                        return r.withSessionGet(function);
+                    }
+                    catch(DaoException e) {
+                        if(!isConnectionFailure(e)) throw e;
+                        r.downUntil = (System.currentTimeMillis() + downMillis);
+                        replica     = null;
+                    }
+                }
+                return Utils.withSessionGet(SessionFactories.get(primary), true, function);
+            }
+            finally {
+                if(pinnedUntil > saved) PINNED_UNTIL.set(saved);
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: RetryPolicy.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.errors.StaleEntityException;
+import com.projectgalen.lib.jpa.utils.interfaces.SessionFunction;
+import jakarta.persistence.LockTimeoutException;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PessimisticLockException;
+import org.hibernate.StaleStateException;
+import org.hibernate.exception.LockAcquisitionException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a transaction that failed in {@link Utils#withSessionGet(SessionFunction)} is tried again and how long to wait first. Only transient
+ * failures are retried: deadlocks, lock timeouts, serialization failures, and optimistic-lock failures. The wait grows exponentially with each attempt
+ * and is randomized (full jitter) so that threads that failed together don't all try again together. Retries are also limited by a budget that is
+ * refilled by a fraction of a retry for every transaction started so that a database that is failing under load is not hit even harder. Each policy
+ * has its own budget, shared by every transaction that uses it.
+ */
+@SuppressWarnings("unused")
+public final class RetryPolicy {
+    /**
+     * Never retry. This is the default.
+     */
+    public static final RetryPolicy NONE    = new RetryPolicy(1, 0, 0, 0, Set.of());
+    /**
+     * Up to 5 attempts waiting up to 50, 100, 200, and 400 milliseconds between them.
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(5, 50, 2_000, 0.1, Set.of("40001", "40P01", "55P03", "HYT00", "40XL1", "40XL2", "61000"));
+
+    /*
+     * The budget is kept in thousandths of a retry so that it can be updated without a lock.
+     */
+    private static final long BUDGET_UNIT = 1_000;
+    private static final long BUDGET_CAP  = (10 * BUDGET_UNIT);
+
+    private final int         maxAttempts;
+    private final long        baseDelayMillis;
+    private final long        maxDelayMillis;
+    private final double      budgetRatio;
+    private final long        refill;
+    private final Set<String> sqlStates;
+    private final AtomicLong  budget = new AtomicLong(BUDGET_CAP);
+
+    private RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, double budgetRatio, @NotNull Set<String> sqlStates) {
+        this.maxAttempts     = Math.max(1, maxAttempts);
+        this.baseDelayMillis = Math.max(0, baseDelayMillis);
+        this.maxDelayMillis  = Math.max(this.baseDelayMillis, maxDelayMillis);
+        this.budgetRatio     = Math.max(0, budgetRatio);
+        this.refill          = Math.round(this.budgetRatio * BUDGET_UNIT);
+        this.sqlStates       = Collections.unmodifiableSet(new TreeSet<>(sqlStates));
+    }
+
+    public long getBaseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    public double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public @NotNull Set<String> getSqlStates() {
+        return sqlStates;
+    }
+
+    /**
+     * Returns <code>true</code> if the exception, or one of its causes, is a transient failure that is worth trying again.
+     *
+     * @param t The exception.
+     *
+     * @return <code>true</code> if the failure is transient.
+     */
+    public boolean isTransient(@Nullable Throwable t) {
+        for(; t != null; t = t.getCause()) {
+            if((t instanceof LockAcquisitionException) || (t instanceof PessimisticLockException) || (t instanceof LockTimeoutException)) return true;
+            if((t instanceof OptimisticLockException) || (t instanceof StaleStateException) || (t instanceof StaleEntityException)) return true;
+            if(t instanceof SQLTransactionRollbackException) return true;
+            if((t instanceof SQLException sqle) && (sqle.getSQLState() != null) && sqlStates.contains(sqle.getSQLState())) return true;
+        }
+        return false;
+    }
+
+    public @Override String toString() {
+        return String.format("RetryPolicy{maxAttempts=%d, baseDelayMillis=%d, maxDelayMillis=%d, budgetRatio=%s, sqlStates=%s}", maxAttempts, baseDelayMillis, maxDelayMillis, budgetRatio, sqlStates);
+    }
+
+    public @NotNull RetryPolicy withBudgetRatio(double ratio) {
+        return new RetryPolicy(maxAttempts, baseDelayMillis, maxDelayMillis, ratio, sqlStates);
+    }
+
+    public @NotNull RetryPolicy withDelays(long baseMillis, long maxMillis) {
+        return new RetryPolicy(maxAttempts, baseMillis, maxMillis, budgetRatio, sqlStates);
+    }
+
+    public @NotNull RetryPolicy withMaxAttempts(int attempts) {
+        return new RetryPolicy(attempts, baseDelayMillis, maxDelayMillis, budgetRatio, sqlStates);
+    }
+
+    /**
+     * Returns a copy of this policy that also retries SQLExceptions with the given SQLStates.
+     *
+     * @param states The SQLStates. (e.g. "40001" for a serialization failure)
+     *
+     * @return The new policy.
+     */
+    public @NotNull RetryPolicy withSqlStates(String @NotNull ... states) {
+        Set<String> set = new TreeSet<>(sqlStates);
+        set.addAll(Arrays.asList(states));
+        return new RetryPolicy(maxAttempts, baseDelayMillis, maxDelayMillis, budgetRatio, set);
+    }
+
+    /**
+     * Called once for every transaction, before its first attempt, to refill the retry budget. Policies that never retry have nothing to refill,
+     * and a full budget is only read, so this costs next to nothing on the write path.
+     */
+    void deposit() {
+        if((maxAttempts > 1) && (refill > 0) && (budget.get() < BUDGET_CAP)) budget.accumulateAndGet(refill, (b, r) -> Math.min(BUDGET_CAP, (b + r)));
+    }
+
+    /**
+     * Returns <code>true</code> and takes one retry from the budget if the given attempt failed with a transient failure, there are attempts left,
+     * and the budget is not empty.
+     *
+     * @param t       The failure.
+     * @param attempt The attempt that failed, starting with 1.
+     *
+     * @return <code>true</code> if the transaction should be tried again.
+     */
+    boolean shouldRetry(@NotNull Throwable t, int attempt) {
+        if((attempt >= maxAttempts) || !isTransient(t)) return false;
+        return (budget.getAndUpdate(b -> ((b < BUDGET_UNIT) ? b : (b - BUDGET_UNIT))) >= BUDGET_UNIT);
+    }
+
+    /**
+     * Waits before the next attempt.
+     *
+     * @param attempt The attempt that failed, starting with 1.
+     *
+     * @return <code>false</code> if the thread was interrupted while waiting.
+     */
+    boolean sleep(int attempt) {
+        long ceiling = Math.min(maxDelayMillis, (baseDelayMillis << Math.min(30, attempt - 1)));
+        try {
+            if(ceiling > 0) Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+            return true;
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: SavePlan.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.errors.DaoException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.projectgalen.lib.jpa.utils.base.Utils.msgs;
+import static com.projectgalen.lib.jpa.utils.enums.JpaState.NEW;
+
+/**
+ * Works out the order in which a graph of entities has to be written. The to-one references of each entity are read only once. New entities are
+ * inserted after the new entities they reference and, within that constraint, entities of the same class are kept together so that their inserts can
+ * be sent as one batch.
+ */
+final class SavePlan {
+    private final Map<JpaBase<?>, List<JpaBase<?>>> parents = new IdentityHashMap<>();
+    private final Map<JpaBase<?>, Boolean>          visited = new IdentityHashMap<>();
+    private final List<JpaBase<?>>                  nodes   = new ArrayList<>();
+
+    private SavePlan() { }
+
+    /**
+     * Returns the new entities in the order they have to be inserted. This includes the given entities that are NEW along with any NEW entities they
+     * reference, directly or through other NEW entities.
+     *
+     * @param entities The entities being saved.
+     *
+     * @return The NEW entities in insert order.
+     *
+     * @throws DaoException if new entities reference each other in a cycle.
+     */
+    static @NotNull List<JpaBase<?>> getInsertOrder(@NotNull Collection<? extends JpaBase<?>> entities) {
+        SavePlan                          plan     = new SavePlan();
+        Map<JpaBase<?>, Integer>          waiting  = new IdentityHashMap<>();
+        Map<JpaBase<?>, List<JpaBase<?>>> children = new IdentityHashMap<>();
+
+        for(JpaBase<?> e : entities) {
+            if(e.jpaState == NEW) plan.visit(e);
+            else plan.getNewParents(e).forEach(plan::visit);
+        }
+
+        for(JpaBase<?> e : plan.nodes) {
+            List<JpaBase<?>> ps = plan.getNewParents(e);
+            waiting.put(e, ps.size());
+            ps.forEach(p -> children.computeIfAbsent(p, k -> new ArrayList<>()).add(e));
+        }
+
+        /*
+         * Kahn's algorithm, taking every ready entity of one class at a time. The class just written is preferred while it still has ready entities,
+         * otherwise the class with the most ready entities is taken next.
+         */
+        Map<Class<?>, Deque<JpaBase<?>>> ready = new LinkedHashMap<>();
+        List<JpaBase<?>>                 order = new ArrayList<>(plan.nodes.size());
+        Class<?>                         last  = null;
+
+        plan.nodes.stream().filter(e -> (waiting.get(e) == 0)).forEach(e -> ready.computeIfAbsent(e.getClass(), k -> new ArrayDeque<>()).add(e));
+
+        while(!ready.isEmpty()) {
+            Class<?>          cls   = (ready.containsKey(last) ? last : ready.entrySet().stream().max(Comparator.comparingInt(x -> x.getValue().size())).orElseThrow().getKey());
+            Deque<JpaBase<?>> queue = ready.get(cls);
+
+            while(!queue.isEmpty()) {
+                JpaBase<?> e = queue.poll();
+                order.add(e);
+                for(JpaBase<?> c : children.getOrDefault(e, List.of())) {
+                    if(waiting.merge(c, -1, Integer::sum) == 0) ready.computeIfAbsent(c.getClass(), k -> new ArrayDeque<>()).add(c);
+                }
+            }
+
+            ready.remove(cls);
+            last = cls;
+        }
+
+        return order;
+    }
+
+    /**
+     * Returns the given entity and every entity reachable from it through to-one references, parents before children wherever the references
+     * allow it.
+     *
+     * @param root The entity to start from.
+     *
+     * @return The reachable entities.
+     */
+    static @NotNull List<JpaBase<?>> getReachable(@NotNull JpaBase<?> root) {
+        SavePlan                    plan  = new SavePlan();
+        Set<JpaBase<?>>             seen  = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<JpaBase<?>>            path  = new ArrayList<>(List.of(root));
+        List<JpaBase<?>>            list  = new ArrayList<>();
+        Deque<Iterator<JpaBase<?>>> stack = new ArrayDeque<>();
+
+        seen.add(root);
+        stack.push(plan.getParents(root).iterator());
+
+        while(!stack.isEmpty()) {
+            Iterator<JpaBase<?>> it = stack.peek();
+            if(it.hasNext()) {
+                JpaBase<?> p = it.next();
+                if(seen.add(p)) {
+                    path.add(p);
+                    stack.push(plan.getParents(p).iterator());
+                }
+            }
+            else {
+                stack.pop();
+                list.add(path.remove(path.size() - 1));
+            }
+        }
+
+        return list;
+    }
+
+    private @NotNull List<JpaBase<?>> getNewParents(@NotNull JpaBase<?> e) {
+        return getParents(e).stream().filter(p -> (p.jpaState == NEW)).collect(Collectors.toList());
+    }
+
+    private @NotNull List<JpaBase<?>> getParents(@NotNull JpaBase<?> e) {
+        return parents.computeIfAbsent(e, k -> {
+            Set<JpaBase<?>> set = Collections.newSetFromMap(new IdentityHashMap<>());
+            return k.getToOneStream().filter(p -> ((p != k) && set.add(p))).collect(Collectors.toList());
+        });
+    }
+
+    /**
+     * Depth-first walk of the NEW entities, adding each one to the list of nodes once all of its NEW parents have been added. An entity that is reached
+     * again while it is still on the path is part of a cycle. Like {@link #getReachable(JpaBase)} this keeps its own stack so that a long chain of
+     * references can't overflow the thread's stack.
+     */
+    private void visit(@NotNull JpaBase<?> root) {
+        if(visited.containsKey(root)) return;
+
+        Deque<JpaBase<?>>           path  = new ArrayDeque<>(List.of(root));
+        Deque<Iterator<JpaBase<?>>> stack = new ArrayDeque<>();
+
+        visited.put(root, false);
+        stack.push(getNewParents(root).iterator());
+
+        while(!stack.isEmpty()) {
+            Iterator<JpaBase<?>> it = stack.peek();
+            if(it.hasNext()) {
+                JpaBase<?> p    = it.next();
+                Boolean    done = visited.get(p);
+
+                if(Boolean.FALSE.equals(done)) {
+                    List<JpaBase<?>> cycle = new ArrayList<>(path);
+                    Collections.reverse(cycle);
+                    cycle = cycle.subList(cycle.indexOf(p), cycle.size());
+                    throw new DaoException(msgs.format("msg.err.save.cycle", cycle.stream().map(c -> c.getClass().getSimpleName()).collect(Collectors.joining(" -> ", "", " -> " + p.getClass().getSimpleName()))));
+                }
+                if(done == null) {
+                    visited.put(p, false);
+                    path.push(p);
+                    stack.push(getNewParents(p).iterator());
+                }
+            }
+            else {
+                stack.pop();
+                JpaBase<?> e = path.pop();
+                visited.put(e, true);
+                nodes.add(e);
+            }
+        }
+    }
+}
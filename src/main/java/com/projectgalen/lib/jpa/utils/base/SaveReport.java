@@ -0,0 +1,74 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: SaveReport.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The results of {@link Utils#saveAllParallel(int)}.
+ */
+@SuppressWarnings("unused")
+public final class SaveReport {
+    private final List<Partition> partitions;
+    private final long            elapsedMillis;
+
+    public SaveReport(@NotNull List<Partition> partitions, long elapsedMillis) {
+        this.partitions    = Collections.unmodifiableList(partitions);
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public @NotNull List<Partition> getFailures() {
+        return partitions.stream().filter(p -> !p.isSuccess()).collect(Collectors.toList());
+    }
+
+    public @NotNull List<Partition> getPartitions() {
+        return partitions;
+    }
+
+    public int getSavedCount() {
+        return partitions.stream().filter(Partition::isSuccess).mapToInt(Partition::entities).sum();
+    }
+
+    public boolean isSuccess() {
+        return partitions.stream().allMatch(Partition::isSuccess);
+    }
+
+    public @Override String toString() {
+        return String.format("SaveReport{partitions=%d, failures=%d, saved=%d, elapsedMillis=%d}", partitions.size(), getFailures().size(), getSavedCount(), elapsedMillis);
+    }
+
+    public record Partition(int index, int entities, long elapsedMillis, @Nullable Throwable error) {
+        public boolean isSuccess() {
+            return (error == null);
+        }
+    }
+}
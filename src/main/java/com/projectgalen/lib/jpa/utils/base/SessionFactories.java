@@ -0,0 +1,235 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: SessionFactories.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.errors.DaoException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import static com.projectgalen.lib.jpa.utils.base.Utils.msgs;
+
+/**
+ * A registry of named {@link SessionFactory}s. Each factory is built the first time it is asked for, or ahead of time in the background by
+ * {@link #prewarm(String...)}. The factory named {@link #DEFAULT} is built from <code>hibernate.cfg.xml</code> unless something else is registered
+ * under that name first.
+ * <p>
+ * The entity cache and the query cache keep the entities and results of each factory apart, so the same entity class can be read from several
+ * databases at once.
+ */
+@SuppressWarnings("unused")
+public final class SessionFactories {
+    public static final String DEFAULT = "default";
+
+    private static final Map<String, Entry>          FACTORIES = new ConcurrentHashMap<>();
+    private static final Map<SessionFactory, String> NAMES     = new ConcurrentHashMap<>();
+
+    private SessionFactories() { }
+
+    /**
+     * Closes all the factories that have been built. They will be built again if they are used after this.
+     */
+    public static void closeAll() {
+        FACTORIES.values().forEach(Entry::close);
+    }
+
+    public static void close(@NotNull String name) {
+        getEntry(name).close();
+    }
+
+    public static @NotNull SessionFactory get() {
+        return get(DEFAULT);
+    }
+
+    /**
+     * Returns the factory registered under the given name, building it first if it has not been built yet. If the factory is being built by another
+     * thread then this method waits for it to finish.
+     *
+     * @param name The name of the factory.
+     *
+     * @return The factory.
+     *
+     * @throws DaoException If no factory has been registered under the given name.
+     */
+    public static @NotNull SessionFactory get(@NotNull String name) {
+        return getEntry(name).get();
+    }
+
+    public static @NotNull Set<String> getNames() {
+        return Collections.unmodifiableSet(new TreeSet<>(FACTORIES.keySet()));
+    }
+
+    public static boolean isInitialized(@NotNull String name) {
+        Entry entry = FACTORIES.get(name);
+        return ((entry != null) && entry.isInitialized());
+    }
+
+    public static boolean isRegistered(@NotNull String name) {
+        return FACTORIES.containsKey(name);
+    }
+
+    /**
+     * Builds the given factories, and opens one connection from each of them, in the background so that the first DAO call does not have to. If no
+     * names are given then all the registered factories are pre-warmed.
+     *
+     * @param names The names of the factories.
+     *
+     * @return A future that completes when all the factories have been built.
+     */
+    public static @NotNull CompletableFuture<Void> prewarm(String @NotNull ... names) {
+        List<String> list = ((names.length == 0) ? new ArrayList<>(FACTORIES.keySet()) : Arrays.asList(names));
+        return CompletableFuture.allOf(list.stream().map(SessionFactories::getEntry).map(e -> CompletableFuture.runAsync(e::prewarm, r -> {
+            Thread t = new Thread(r, "SessionFactory-prewarm-" + e.name);
+            t.setDaemon(true);
+            t.start();
+        })).toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Registers a factory under the given name. If a factory was already registered under that name, and has been built, it is closed.
+     *
+     * @param name     The name of the factory.
+     * @param supplier The supplier that builds the factory. It is called once, the first time the factory is needed.
+     */
+    public static void register(@NotNull String name, @NotNull Supplier<SessionFactory> supplier) {
+        Entry old = FACTORIES.put(name, new Entry(name, supplier));
+        if(old != null) old.close();
+    }
+
+    public static void register(@NotNull String name, @NotNull Configuration configuration) {
+        register(name, configuration::buildSessionFactory);
+    }
+
+    /**
+     * Registers a factory under the given name that is built from a Hibernate configuration resource.
+     *
+     * @param name     The name of the factory.
+     * @param resource The name of the configuration resource. (e.g. "tenant1.cfg.xml")
+     */
+    public static void register(@NotNull String name, @NotNull String resource) {
+        register(name, () -> new Configuration().configure(resource).buildSessionFactory());
+    }
+
+    /**
+     * Registers a factory under the given name that is configured entirely in code.
+     *
+     * @param name       The name of the factory.
+     * @param properties The Hibernate properties. (connection URL, dialect, etc.)
+     * @param classes    The entity classes.
+     */
+    public static void register(@NotNull String name, @NotNull Properties properties, Class<?> @NotNull ... classes) {
+        register(name, () -> {
+            Configuration configuration = new Configuration().addProperties(properties);
+            for(Class<?> cls : classes) configuration.addAnnotatedClass(cls);
+            return configuration.buildSessionFactory();
+        });
+    }
+
+    /**
+     * Removes the factory registered under the given name and closes it if it has been built.
+     *
+     * @param name The name of the factory.
+     */
+    public static void unregister(@NotNull String name) {
+        Entry entry = FACTORIES.remove(name);
+        if(entry != null) entry.close();
+    }
+
+    private static @NotNull Entry getEntry(@NotNull String name) {
+        Entry entry = FACTORIES.get(name);
+        if(entry == null) throw new DaoException(msgs.format("msg.err.unknown_session_factory", name));
+        return entry;
+    }
+
+    /**
+     * Returns the name the factory was built under. The entity cache is kept apart by this name. A factory that wasn't built by this registry is
+     * treated as the {@link #DEFAULT} one.
+     *
+     * @param factory The factory.
+     *
+     * @return The name of the factory.
+     */
+    static @NotNull String getName(@NotNull SessionFactory factory) {
+        return NAMES.getOrDefault(factory, DEFAULT);
+    }
+
+    private static final class Entry {
+        private final    String                   name;
+        private final    Supplier<SessionFactory> supplier;
+        private volatile SessionFactory           factory;
+
+        public Entry(@NotNull String name, @NotNull Supplier<SessionFactory> supplier) {
+            this.name     = name;
+            this.supplier = supplier;
+        }
+
+        /**
+         * The field is cleared before the factory is closed so that get() builds a new one rather than returning the one being closed. get() also
+         * rebuilds a factory that was closed some other way.
+         */
+        public void close() {
+            SessionFactory f;
+            synchronized(this) {
+                f       = factory;
+                factory = null;
+            }
+            if(f != null) {
+                NAMES.remove(f);
+                f.close();
+            }
+        }
+
+        public @NotNull SessionFactory get() {
+            SessionFactory f = factory;
+            if((f == null) || f.isClosed()) {
+                synchronized(this) {
+                    if(((f = factory) == null) || f.isClosed()) {
+                        factory = f = Objects.requireNonNull(supplier.get());
+                        NAMES.put(f, name);
+                    }
+                }
+            }
+            return f;
+        }
+
+        public boolean isInitialized() {
+            return (factory != null);
+        }
+
+        public void prewarm() {
+            try(Session session = get().openSession()) {
+                session.doWork(connection -> { });
+            }
+        }
+    }
+
+    static {
+        register(DEFAULT, () -> new Configuration().configure().buildSessionFactory());
+    }
+}
@@ -0,0 +1,106 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: UdpTransport.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.interfaces.InvalidationTransport;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * An {@link InvalidationTransport} that sends each message as a UDP datagram to a fixed list of peers and receives datagrams on a local port. Messages
+ * are kept under a typical Ethernet MTU so that they are not fragmented. Lost datagrams are not resent.
+ */
+@SuppressWarnings("unused")
+public final class UdpTransport implements InvalidationTransport {
+    private static final int MAX_MESSAGE_SIZE = 1400;
+
+    private final    int                     port;
+    private final    List<InetSocketAddress> peers;
+    private volatile DatagramSocket          socket;
+
+    /**
+     * @param port  The local port to receive on.
+     * @param peers The addresses of the other nodes.
+     */
+    public UdpTransport(int port, @NotNull InetSocketAddress @NotNull ... peers) {
+        this.port  = port;
+        this.peers = List.of(peers);
+    }
+
+    public @Override void close() {
+        DatagramSocket s = socket;
+        socket = null;
+        if(s != null) s.close();
+    }
+
+    public @Override int getMaxMessageSize() {
+        return MAX_MESSAGE_SIZE;
+    }
+
+    public @NotNull List<InetSocketAddress> getPeers() {
+        return peers;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public @Override void open(@NotNull Consumer<byte[]> receiver) throws IOException {
+        DatagramSocket s = new DatagramSocket(port);
+        Thread         t = new Thread(() -> receive(s, receiver), "UdpTransport-" + port);
+        socket = s;
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public @Override void send(byte @NotNull [] message) throws IOException {
+        DatagramSocket s = socket;
+        if(s == null) throw new SocketException("Socket is closed");
+        for(InetSocketAddress peer : peers) s.send(new DatagramPacket(message, message.length, peer));
+    }
+
+    private static void receive(@NotNull DatagramSocket s, @NotNull Consumer<byte[]> receiver) {
+        DatagramPacket packet = new DatagramPacket(new byte[MAX_MESSAGE_SIZE], MAX_MESSAGE_SIZE);
+        while(!s.isClosed()) {
+            try {
+                packet.setLength(MAX_MESSAGE_SIZE);
+                s.receive(packet);
+                receiver.accept(Arrays.copyOfRange(packet.getData(), packet.getOffset(), (packet.getOffset() + packet.getLength())));
+            }
+            catch(IOException ignored) {
+                /* The socket was closed. */
+            }
+            catch(RuntimeException ignored) {
+                /* A bad message shouldn't stop the receiver. */
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: UpdateListeners.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.events.JpaBatchUpdateEvent;
+import com.projectgalen.lib.jpa.utils.events.JpaBatchUpdateListener;
+import org.hibernate.Session;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * Listeners for updates to every entity of a class, or of every class, without registering on each instance. The listeners for each class are held in
+ * copy-on-write arrays so notifying them takes no locks.
+ * <p>
+ * The entities updated by one save, such as {@link Utils#saveAll(Session)}, a bulk update, or an upsert, are delivered to each listener as one
+ * {@link JpaBatchUpdateEvent} once the transaction commits. Nothing is delivered if it rolls back. Listeners registered on an instance with {@link
+ * JpaBase#addUpdateListener(com.projectgalen.lib.jpa.utils.events.JpaUpdateListener)} are still called for each entity as before.
+ */
+@SuppressWarnings({ "unused", "unchecked" })
+public final class UpdateListeners {
+    private static final Subscription[]                  NONE     = new Subscription[0];
+    private static final Map<Class<?>, Subscription[]>   BY_CLASS = new ConcurrentHashMap<>();
+    private static final AtomicReference<Subscription[]> GLOBAL   = new AtomicReference<>(NONE);
+    private static final ThreadLocal<Batch>              BATCH    = new ThreadLocal<>();
+
+    private UpdateListeners() { }
+
+    public static boolean hasSubscriptions() {
+        return ((GLOBAL.get().length > 0) || !BY_CLASS.isEmpty());
+    }
+
+    public static @NotNull Subscription subscribe(@NotNull JpaBatchUpdateListener listener) {
+        return subscribe(e -> true, listener);
+    }
+
+    /**
+     * Subscribes to updates of entities of every class that match the filter.
+     *
+     * @param filter   Returns true for the entities the listener wants.
+     * @param listener The listener.
+     *
+     * @return The subscription, which is closed to stop listening.
+     */
+    public static @NotNull Subscription subscribe(@NotNull Predicate<? super JpaBase<?>> filter, @NotNull JpaBatchUpdateListener listener) {
+        Subscription s = new Subscription(null, (Predicate<JpaBase<?>>)filter, listener);
+        GLOBAL.updateAndGet(a -> add(a, s));
+        return s;
+    }
+
+    public static <E extends JpaBase<?>> @NotNull Subscription subscribe(@NotNull Class<E> cls, @NotNull JpaBatchUpdateListener listener) {
+        return subscribe(cls, e -> true, listener);
+    }
+
+    /**
+     * Subscribes to updates of entities of the given class, and its subclasses, that match the filter.
+     *
+     * @param cls      The entity class.
+     * @param filter   Returns true for the entities the listener wants.
+     * @param listener The listener.
+     *
+     * @return The subscription, which is closed to stop listening.
+     */
+    public static <E extends JpaBase<?>> @NotNull Subscription subscribe(@NotNull Class<E> cls, @NotNull Predicate<? super E> filter, @NotNull JpaBatchUpdateListener listener) {
+        Subscription s = new Subscription(cls, e -> filter.test((E)e), listener);
+        BY_CLASS.compute(cls, (k, a) -> add(((a == null) ? NONE : a), s));
+        return s;
+    }
+
+    private static @NotNull Subscription[] add(@NotNull Subscription[] array, @NotNull Subscription s) {
+        Subscription[] a = Arrays.copyOf(array, (array.length + 1));
+        a[array.length] = s;
+        return a;
+    }
+
+    private static void deliver(@NotNull Collection<JpaBase<?>> entities) {
+        Map<Subscription, List<JpaBase<?>>> matches = new LinkedHashMap<>();
+
+        for(JpaBase<?> e : entities) {
+            for(Subscription s : GLOBAL.get()) s.match(e, matches);
+            for(Class<?> c = e.getClass(); (c != null) && (c != Object.class); c = c.getSuperclass()) {
+                Subscription[] a = BY_CLASS.get(c);
+                if(a != null) for(Subscription s : a) s.match(e, matches);
+            }
+        }
+
+        /*
+         * This is usually run after the transaction has committed, so one listener failing must not stop the rest from being told. The first failure
+         * is thrown once they all have been, with any others added to it as suppressed.
+         */
+        RuntimeException error = null;
+        for(Map.Entry<Subscription, List<JpaBase<?>>> m : matches.entrySet()) {
+            try {
+                if(m.getKey().active) m.getKey().listener.entitiesUpdated(new JpaBatchUpdateEvent(m.getKey().getEntityClass(), m.getValue()));
+            }
+            catch(RuntimeException e) {
+                if(error == null) error = e;
+                else error.addSuppressed(e);
+            }
+        }
+        if(error != null) throw error;
+    }
+
+    private static @Nullable Subscription[] remove(@NotNull Subscription[] array, @NotNull Subscription s) {
+        Subscription[] a = Arrays.stream(array).filter(o -> (o != s)).toArray(Subscription[]::new);
+        return ((a.length == 0) ? null : a);
+    }
+
+    /**
+     * Collects the entities updated while the runnable runs and delivers them as one batch once the session's transaction commits, or straight away
+     * if there is no transaction. Batches started while one is already open on the same thread are part of that batch. The entities are delivered in
+     * the order they were first updated.
+     *
+     * @param session The session the updates were made in, if any.
+     * @param runnable The code that updates the entities.
+     */
+    static void batch(@Nullable Session session, @NotNull Runnable runnable) {
+        if(BATCH.get() != null) {
+            runnable.run();
+            return;
+        }
+
+        Batch batch = new Batch();
+        BATCH.set(batch);
+        try {
+            runnable.run();
+        }
+        finally {
+            BATCH.remove();
+        }
+
+        if(!batch.entities.isEmpty()) Utils.afterCommit(session, () -> deliver(batch.entities));
+    }
+
+    /**
+     * Called for each updated entity. Outside a batch the entity is delivered on its own.
+     */
+    static void entityUpdated(@NotNull JpaBase<?> entity) {
+        if(!hasSubscriptions()) return;
+        Batch batch = BATCH.get();
+        if(batch == null) deliver(List.of(entity));
+        else batch.add(entity);
+    }
+
+    /**
+     * The entities updated in a batch in the order they were first updated. Each entity is only added once.
+     */
+    private static final class Batch {
+        private final Set<JpaBase<?>>  seen     = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final List<JpaBase<?>> entities = new ArrayList<>();
+
+        public void add(@NotNull JpaBase<?> e) {
+            if(seen.add(e)) entities.add(e);
+        }
+    }
+
+    public static final class Subscription implements AutoCloseable {
+        private final    Class<?>               cls; // null for every class
+        private final    Predicate<JpaBase<?>>  filter;
+        private final    JpaBatchUpdateListener listener;
+        private volatile boolean                active = true;
+
+        private Subscription(@Nullable Class<?> cls, @NotNull Predicate<JpaBase<?>> filter, @NotNull JpaBatchUpdateListener listener) {
+            this.cls      = cls;
+            this.filter   = filter;
+            this.listener = listener;
+        }
+
+        public @Override void close() {
+            if(active) {
+                active = false;
+                if(cls == null) GLOBAL.updateAndGet(a -> Objects.requireNonNullElse(remove(a, this), NONE));
+                else BY_CLASS.computeIfPresent(cls, (k, a) -> remove(a, this));
+            }
+        }
+
+        public @NotNull Class<?> getEntityClass() {
+            return ((cls == null) ? JpaBase.class : cls);
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        private void match(@NotNull JpaBase<?> e, @NotNull Map<Subscription, List<JpaBase<?>>> matches) {
+            if(active && filter.test(e)) matches.computeIfAbsent(this, k -> new ArrayList<>()).add(e);
+        }
+    }
+}
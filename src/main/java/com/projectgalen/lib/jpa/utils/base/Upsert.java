@@ -0,0 +1,377 @@
+package com.projectgalen.lib.jpa.utils.base;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: Upsert.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.annotations.UpsertKey;
+import com.projectgalen.lib.jpa.utils.enums.SqlDialect;
+import com.projectgalen.lib.jpa.utils.errors.DaoException;
+import com.projectgalen.lib.utils.reflection.Reflection;
+import com.projectgalen.lib.utils.streams.Streams;
+import jakarta.persistence.*;
+import org.hibernate.Session;
+import org.hibernate.annotations.Formula;
+import org.hibernate.annotations.Generated;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.SingleTableEntityPersister;
+import org.hibernate.type.CompositeType;
+import org.hibernate.type.Type;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static com.projectgalen.lib.jpa.utils.base.Utils.*;
+import static com.projectgalen.lib.jpa.utils.enums.JpaState.CURRENT;
+import static com.projectgalen.lib.utils.reflection.Reflection2.getAnnotatedFields;
+
+/**
+ * Writes entities with a single native insert-or-update statement per row, batched through JDBC, instead of inserting and recovering from a
+ * duplicate-key error. Rows are matched on the {@link UpsertKey} fields, or the ID fields if there are none. A row that already exists has every
+ * other column overwritten (last writer wins) and its version, if it has one, incremented. Classes mapped to more than one table, such as joined
+ * subclasses, can't be written with one statement and are rejected.
+ */
+@SuppressWarnings({ "unchecked", "rawtypes" })
+final class Upsert {
+    private static final Map<Key, Upsert> UPSERTS = new ConcurrentHashMap<>();
+
+    private final Class<?>           cls;
+    private final String             table;
+    private final List<UpsertColumn> columns;
+    private final List<UpsertColumn> keys;
+    private final List<Field>        reload;
+    private final Field              version;
+    private final String             discriminator;
+    private final Object             discriminatorValue;
+
+    /**
+     * The table and column names are taken from Hibernate's mapping of the class rather than from its annotations so that naming strategies, entity
+     * names, embedded attributes, attribute overrides, and inherited mappings are all honored.
+     */
+    private Upsert(@NotNull Class<?> cls, @NotNull AbstractEntityPersister persister) {
+        if(persister.getQuerySpaces().length > 1) throw new DaoException(msgs.format("msg.err.upsert.multi_table", cls.getName()));
+
+        List<Field>        ids   = getAnnotatedFields(cls, Id.class, EmbeddedId.class).distinct().collect(Collectors.toList());
+        String[]           props = persister.getPropertyNames();
+        boolean[]          ins   = persister.getPropertyInsertability();
+        Type[]             types = persister.getPropertyTypes();
+        List<UpsertColumn> list  = new ArrayList<>();
+
+        for(Field f : ids) {
+            if(!isInsertable(f)) continue;
+            if(ids.size() == 1) addColumns(list, cls, f, persister.getIdentifierType(), persister.getIdentifierColumnNames());
+            else addColumns(list, cls, f, null, persister.getPropertyColumnNames(f.getName()));
+        }
+        for(int i = 0; i < props.length; i++) {
+            if(!ins[i] || types[i].isCollectionType()) continue;
+            Field f = findField(cls, props[i]);
+            if((f != null) && isInsertable(f)) addColumns(list, cls, f, types[i], persister.getPropertyColumnNames(props[i]));
+        }
+
+        this.cls     = cls;
+        this.table   = persister.getTableName();
+        this.version = getVersionField(cls);
+        this.columns = Collections.unmodifiableList(list);
+
+        SingleTableEntityPersister stp = ((persister instanceof SingleTableEntityPersister p) ? p : null);
+        this.discriminator      = ((stp == null) ? null : stp.getDiscriminatorColumnName());
+        this.discriminatorValue = ((discriminator == null) ? null : stp.getDiscriminatorValue());
+
+        List<UpsertColumn> ukeys = columns.stream().filter(c -> c.field.isAnnotationPresent(UpsertKey.class)).collect(Collectors.toList());
+        this.keys   = (ukeys.isEmpty() ? columns.stream().filter(c -> ids.contains(c.field)).collect(Collectors.toList()) : ukeys);
+        this.reload = getAnnotatedFields(cls, Id.class, Version.class).distinct().filter(f -> keys.stream().noneMatch(c -> c.field.equals(f))).collect(Collectors.toList());
+
+        if(keys.isEmpty()) throw new DaoException(msgs.format("msg.err.upsert.no_key", cls.getName()));
+    }
+
+    /**
+     * Upserts the entities. Afterward each entity has the ID and version of its row and is CURRENT. If an entity for the same row was already in the
+     * entity cache, with no unsaved changes, then it is returned in place of the given entity so that there is still only one instance of each row.
+     * The entity cache is only changed once the transaction commits: the cached instances are updated then, and entities with no cached instance
+     * are cached.
+     *
+     * @param session   The session.
+     * @param entities  The entities. They must all be of the class this object was created for.
+     * @param batchSize The number of rows sent to the database at a time.
+     *
+     * @return The cached instance of each entity in the same order.
+     */
+    public <E extends JpaBase<?>> @NotNull List<E> execute(@NotNull Session session, @NotNull List<E> entities, int batchSize) {
+        if(entities.isEmpty()) return new ArrayList<>();
+        int size = Math.max(1, batchSize);
+
+        session.flush();
+        entities.forEach(e -> {
+            journal(e);
+            if((version != null) && (Reflection.getFieldValue(version, e) == null)) Reflection.setFieldValue(version, e, nextVersion(version, null));
+        });
+
+        session.doWork(conn -> {
+            try(PreparedStatement ps = conn.prepareStatement(getSql(getDialect(conn)))) {
+                for(int i = 0; i < entities.size(); i++) {
+                    bind(ps, entities.get(i));
+                    ps.addBatch();
+                    if(((i + 1) % size) == 0) ps.executeBatch();
+                }
+                if((entities.size() % size) != 0) ps.executeBatch();
+            }
+        });
+
+        if(!reload.isEmpty()) for(int i = 0; i < entities.size(); i += size) reload(session, entities.subList(i, Math.min(entities.size(), i + size)));
+
+        String  factory = factoryOf(session);
+        List<E> list    = locked(() -> entities.stream().map(e -> toCached(factory, e)).collect(Collectors.toList()));
+
+        afterCommit(session, () -> Streams.listStream(entities).forEach(r -> reconcile(factory, r.item, list.get(r.index))));
+        QueryCache.invalidate(session, Set.of(cls));
+        CacheInvalidation.publish(session, list);
+        ReadRouting.pin();
+        UpdateListeners.batch(session, () -> list.forEach(JpaBase::fireUpdatedEvent));
+        return list;
+    }
+
+    /**
+     * Returns the upsert statement for the given database. The parameters are the values of all the columns in the order they were found followed,
+     * for a class in a single-table hierarchy, by its discriminator value.
+     *
+     * @param dialect The database dialect.
+     *
+     * @return The SQL.
+     */
+    public @NotNull String getSql(@NotNull SqlDialect dialect) {
+        List<String>       names  = getInsertNames();
+        List<UpsertColumn> update = columns.stream().filter(c -> !keys.contains(c)).collect(Collectors.toList());
+        String             cols   = String.join(", ", names);
+        String             qs     = names.stream().map(n -> "?").collect(Collectors.joining(", "));
+
+        return switch(dialect) {/*@f0*/
+            case POSTGRESQL -> String.format("insert into %s (%s) values (%s) on conflict (%s) %s", table, cols, qs, keys.stream().map(c -> c.name).collect(Collectors.joining(", ")),
+                                             (update.isEmpty() ? "do nothing" : update.stream().map(c -> c.isVersion() ? String.format("%1$s = %2$s.%1$s + 1", c.name, table) : String.format("%1$s = excluded.%1$s", c.name)).collect(Collectors.joining(", ", "do update set ", ""))));
+            case MYSQL      -> String.format("insert into %s (%s) values (%s) on duplicate key update %s", table, cols, qs,
+                                             (update.isEmpty() ? keys : update).stream().map(c -> c.isVersion() ? String.format("%1$s = %1$s + 1", c.name) : String.format("%1$s = values(%1$s)", c.name)).collect(Collectors.joining(", ")));
+            case H2         -> getMergeSql(String.format("(values (%s)) s (%s)", qs, cols), update, "");
+            case SQLSERVER  -> getMergeSql(String.format("(values (%s)) as s (%s)", qs, cols), update, ";");
+            case ORACLE     -> getMergeSql(String.format("(select %s from dual) s", names.stream().map(n -> "? " + n).collect(Collectors.joining(", "))), update, "");
+        };/*@f1*/
+    }
+
+    private void bind(@NotNull PreparedStatement ps, @NotNull JpaBase<?> entity) throws SQLException {
+        for(int i = 0; i < columns.size(); i++) ps.setObject(i + 1, columns.get(i).getValue(entity));
+        if(discriminator != null) ps.setObject(columns.size() + 1, discriminatorValue);
+    }
+
+    private @NotNull List<String> getInsertNames() {
+        List<String> names = columns.stream().map(c -> c.name).collect(Collectors.toCollection(ArrayList::new));
+        if(discriminator != null) names.add(discriminator);
+        return names;
+    }
+
+    private @NotNull String getMergeSql(@NotNull String source, @NotNull List<UpsertColumn> update, @NotNull String terminator) {
+        String on  = keys.stream().map(c -> String.format("t.%1$s = s.%1$s", c.name)).collect(Collectors.joining(" and "));
+        String ins = String.join(", ", getInsertNames());
+        String val = getInsertNames().stream().map(n -> "s." + n).collect(Collectors.joining(", "));
+        String upd = (update.isEmpty() ? "" : update.stream().map(c -> c.isVersion() ? String.format("t.%1$s = t.%1$s + 1", c.name) : String.format("t.%1$s = s.%1$s", c.name)).collect(Collectors.joining(", ", " when matched then update set ", "")));
+        return String.format("merge into %s t using %s on (%s)%s when not matched then insert (%s) values (%s)%s", table, source, on, upd, ins, val, terminator);
+    }
+
+    /**
+     * Brings the entity cache into line with an upserted entity once the transaction has committed. A cached instance that has been changed since
+     * {@link #toCached(String, JpaBase)} chose it keeps its changes.
+     *
+     * @param factory  The name of the session factory.
+     * @param entity   The upserted entity.
+     * @param returned The instance returned for it by {@link #execute(Session, List, int)}.
+     */
+    private <E extends JpaBase<?>> void reconcile(@NotNull String factory, @NotNull E entity, @NotNull E returned) {
+        if(returned == entity) {
+            doLocked(() -> replaceWithCached(factory, entity));
+            return;
+        }
+        synchronized(returned.syncLock) {
+            if((returned.jpaState != CURRENT) || !returned.changedFields.isEmpty()) return;
+            columns.stream().filter(c -> !keys.contains(c)).map(c -> c.field).distinct().forEach(f -> Reflection.setFieldValue(f, returned, Reflection.getFieldValue(f, entity)));
+            if(version != null) Reflection.setFieldValue(version, returned, Reflection.getFieldValue(version, entity));
+        }
+    }
+
+    /**
+     * Reads the IDs and versions the database gave the rows, which the entities don't know yet, back into the entities with one query.
+     */
+    private void reload(@NotNull Session session, @NotNull List<? extends JpaBase<?>> entities) {
+        Map<String, Object>             params = new HashMap<>();
+        Map<List<Object>, List<Object>> rows   = new HashMap<>();
+        String                          key    = keys.stream().map(UpsertColumn::getPath).collect(Collectors.joining(", "));
+        String                          select = reload.stream().map(f -> "e." + f.getName()).collect(Collectors.joining(", "));
+        String where = Streams.listStream(entities).map(r -> Streams.listStream(keys).map(k -> {
+            String name = String.format("pgKey%d_%d", r.index, k.index);
+            params.put(name, k.item.getKey(r.item));
+            return String.format("(%s = :%s)", k.item.getPath(), name);
+        }).collect(Collectors.joining(" and ", "(", ")"))).collect(Collectors.joining(" or "));
+
+        String ql = String.format("select new list(%s, %s) %s where %s", key, select, getFromClause(cls), where);
+        withQueryGet(session, List.class, ql, params, 0, 0, (s, q) -> q.getResultList()).forEach(row -> rows.put(new ArrayList<Object>(row.subList(0, keys.size())), row.subList(keys.size(), row.size())));
+
+        for(JpaBase<?> e : entities) {
+            List<Object> values = rows.get(keys.stream().map(k -> k.getKey(e)).collect(Collectors.toList()));
+            if(values != null) Streams.listStream(reload).forEach(f -> Reflection.setFieldValue(f.item, e, values.get(f.index)));
+        }
+    }
+
+    /**
+     * Returns the instance to hand back for an upserted entity: the cached instance of its row if there is one without unsaved changes, otherwise
+     * the entity itself. Nothing in the entity cache is changed here. Must be called while holding the cache lock.
+     */
+    private <E extends JpaBase<?>> @NotNull E toCached(@NotNull String factory, @NotNull E entity) {
+        removeFromDirtyList(entity);
+        entity.changedFields.clear();
+        entity.jpaState = CURRENT;
+
+        E cached = getCached(factory, entity);
+        return (((cached == null) || (cached.jpaState != CURRENT) || !cached.changedFields.isEmpty()) ? entity : cached);
+    }
+
+    public static @NotNull Upsert get(@NotNull Session session, @NotNull Class<?> cls) {
+        SessionFactoryImplementor factory = session.getSessionFactory().unwrap(SessionFactoryImplementor.class);
+        return UPSERTS.computeIfAbsent(new Key(factory, cls), k -> new Upsert(cls, (AbstractEntityPersister)factory.getRuntimeMetamodels().getMappingMetamodel().getEntityDescriptor(cls)));
+    }
+
+    /**
+     * Adds the columns of a persistent field. An embedded field has one column for each attribute of the embeddable, in the order Hibernate gives
+     * them.
+     */
+    private static void addColumns(@NotNull List<UpsertColumn> list, @NotNull Class<?> cls, @NotNull Field field, @Nullable Type type, String @NotNull [] names) {
+        if(names.length == 0) return;
+        if(Arrays.stream(names).anyMatch(Objects::isNull)) return;
+
+        if((type instanceof CompositeType ct) && type.isComponentType()) {
+            String[] attrs = ct.getPropertyNames();
+            if(attrs.length != names.length) throw new DaoException(msgs.format("msg.err.upsert.unsupported_column", cls.getName(), field.getName()));
+            for(int i = 0; i < attrs.length; i++) {
+                Field sub = findField(field.getType(), attrs[i]);
+                if(sub == null) throw new DaoException(msgs.format("msg.err.upsert.unsupported_column", cls.getName(), field.getName()));
+                list.add(new UpsertColumn(field, sub, names[i]));
+            }
+        }
+        else {
+            if(names.length != 1) throw new DaoException(msgs.format("msg.err.upsert.unsupported_column", cls.getName(), field.getName()));
+            list.add(new UpsertColumn(field, null, names[0]));
+        }
+    }
+
+    private static @Nullable Field findField(@NotNull Class<?> cls, @NotNull String name) {
+        for(Class<?> c = cls; (c != null) && (c != Object.class); c = c.getSuperclass()) {
+            try {
+                Field f = c.getDeclaredField(name);
+                f.trySetAccessible();
+                return f;
+            }
+            catch(NoSuchFieldException ignored) { }
+        }
+        return null;
+    }
+
+    private static @NotNull SqlDialect getDialect(@NotNull Connection conn) throws SQLException {
+        String     product = conn.getMetaData().getDatabaseProductName();
+        SqlDialect dialect = SqlDialect.forProductName(product);
+        if(dialect == null) throw new DaoException(msgs.format("msg.err.not_supported", product));
+        return dialect;
+    }
+
+    private static boolean isInsertable(@NotNull Field f) {
+        if(Reflection.hasAnyAnnotation(f, GeneratedValue.class, Generated.class, Formula.class, Transient.class)) return false;
+        Column     col = f.getAnnotation(Column.class);
+        JoinColumn jc  = f.getAnnotation(JoinColumn.class);
+        OneToOne   o2o = f.getAnnotation(OneToOne.class);
+        return (((col == null) || col.insertable()) && ((jc == null) || jc.insertable()) && ((o2o == null) || o2o.mappedBy().isEmpty()));
+    }
+
+    private record Key(@NotNull SessionFactoryImplementor factory, @NotNull Class<?> cls) { }
+
+    private static final class UpsertColumn {
+        private final Field                              field;
+        private final Field                              attr;
+        private final String                             name;
+        private final Field                              refId;
+        private final AttributeConverter<Object, Object> converter;
+
+        /**
+         * @param field The persistent field of the entity.
+         * @param attr  The attribute of the embeddable if the field is embedded.
+         * @param name  The column name as Hibernate renders it.
+         */
+        public UpsertColumn(@NotNull Field field, @Nullable Field attr, @NotNull String name) {
+            Field   leaf = ((attr == null) ? field : attr);
+            Convert cv   = leaf.getAnnotation(Convert.class);
+
+            this.field     = field;
+            this.attr      = attr;
+            this.name      = name;
+            this.refId     = (JpaBase.class.isAssignableFrom(leaf.getType()) ? getAnnotatedFields(leaf.getType(), Id.class).findFirst().orElse(null) : null);
+            this.converter = (((cv == null) || (cv.converter() == void.class)) ? null : newConverter(cv.converter()));
+        }
+
+        /**
+         * Returns the value of the field as it is used in HQL, which for a reference is the ID of the referenced entity.
+         */
+        public @Nullable Object getKey(@NotNull JpaBase<?> entity) {
+            Object value = Reflection.getFieldValue(field, entity);
+            if((value != null) && (attr != null)) value = Reflection.getFieldValue(attr, value);
+            return (((value == null) || (refId == null)) ? value : EntityCodec.getValue(refId, value));
+        }
+
+        public @NotNull String getPath() {
+            String path = ((attr == null) ? ("e." + field.getName()) : String.format("e.%s.%s", field.getName(), attr.getName()));
+            return ((refId == null) ? path : String.format("%s.%s", path, refId.getName()));
+        }
+
+        /**
+         * Returns the value of the field as it is written to the column.
+         */
+        public @Nullable Object getValue(@NotNull JpaBase<?> entity) {
+            Object value = getKey(entity);
+            if((value == null) || (refId != null)) return value;
+            if(converter != null) return converter.convertToDatabaseColumn(value);
+            if(value instanceof Enum<?> e) return ((Optional.ofNullable(((attr == null) ? field : attr).getAnnotation(Enumerated.class)).map(Enumerated::value).orElse(EnumType.ORDINAL) == EnumType.STRING) ? e.name() : e.ordinal());
+            return value;
+        }
+
+        public boolean isVersion() {
+            return field.isAnnotationPresent(Version.class);
+        }
+
+        private static @NotNull AttributeConverter<Object, Object> newConverter(@NotNull Class<?> cls) {
+            try {
+                return (AttributeConverter<Object, Object>)cls.getDeclaredConstructor().newInstance();
+            }
+            catch(Exception e) {
+                throw new DaoException(msgs.format("msg.err.dao.new_instance_failure", cls.getName()), e);
+            }
+        }
+    }
+}
@@ -22,8 +22,11 @@ package com.projectgalen.lib.jpa.utils.base;
 // IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
 // ===========================================================================
 
+import com.projectgalen.lib.jpa.utils.annotations.Watermark;
 import com.projectgalen.lib.jpa.utils.enums.JpaState;
+import com.projectgalen.lib.jpa.utils.enums.RefreshPolicy;
 import com.projectgalen.lib.jpa.utils.errors.DaoException;
+import com.projectgalen.lib.jpa.utils.errors.StaleEntityException;
 import com.projectgalen.lib.jpa.utils.interfaces.QueryConsumer;
 import com.projectgalen.lib.jpa.utils.interfaces.QueryFunction;
 import com.projectgalen.lib.jpa.utils.interfaces.SessionConsumer;
@@ -32,15 +35,18 @@ import com.projectgalen.lib.utils.PGResourceBundle;
 import com.projectgalen.lib.utils.concurrency.Locks;
 import com.projectgalen.lib.utils.helpers.Null;
 import com.projectgalen.lib.utils.helpers.U;
+import com.projectgalen.lib.utils.reflection.Reflection;
 import com.projectgalen.lib.utils.streams.Streams;
 import com.projectgalen.lib.utils.text.Text;
-import jakarta.persistence.Id;
-import jakarta.persistence.TypedQuery;
+import jakarta.persistence.*;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
 import org.hibernate.Hibernate;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
-import org.hibernate.cfg.Configuration;
+import org.hibernate.annotations.Formula;
+import org.hibernate.annotations.Generated;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -48,15 +54,17 @@ import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.projectgalen.lib.jpa.utils.enums.JpaState.*;
 import static com.projectgalen.lib.utils.reflection.Reflection2.getAnnotatedFields;
@@ -66,18 +74,163 @@ public class Utils {
     public static final PGResourceBundle msgs        = PGResourceBundle.getXMLPGBundle("com.projectgalen.lib.jpa.utils.messages");
     public static final String           NULL_PK_TAG = "☠︎";
 
+    /**
+     * Returned by {@link #getNumericId(JpaBase)} when the entity has no numeric ID. An entity whose ID really is this value is cached by its string
+     * key instead.
+     */
+    static final long NO_NUMERIC_ID = Long.MIN_VALUE;
+
     private static final ScheduledExecutorService                              EXECUTOR     = Executors.newSingleThreadScheduledExecutor();
     private static final List<JpaBase<?>>                                      DIRTY_LIST   = new ArrayList<>();
-    private static final Map<Class<?>, Map<String, WeakReference<JpaBase<?>>>> ENTITY_CACHE = new HashMap<>();
+    private static final Map<Region, Map<String, WeakReference<JpaBase<?>>>>   ENTITY_CACHE = new HashMap<>();
+    private static final Map<Region, LongRefMap>                               LONG_CACHE   = new HashMap<>();
     private static final ReferenceQueue<JpaBase<?>>                            REF_QUEUE    = new ReferenceQueue<>();
     private static final Lock                                                  LOCK         = new ReentrantLock(true);
+    private static final Set<Class<?>>                                         PINNED       = new HashSet<>();
+    private static final Map<Class<?>, Optional<Field>>                        NUMERIC_IDS  = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Boolean>                                GEN_INSERT   = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Boolean>                                GEN_UPDATE   = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Map<JpaBase<?>, EntityState>>             JOURNAL      = new ThreadLocal<>();
+
+    private static volatile RefreshPolicy refreshPolicy = RefreshPolicy.ALWAYS;
+    private static volatile RetryPolicy   retryPolicy   = RetryPolicy.NONE;
 
     public Utils() { }
 
+    /**
+     * Deletes every row of the given entity class matching the where clause with a single HQL statement. Any matching entities in the entity cache
+     * are marked as DELETED and removed from the cache once the transaction commits and their listeners are then notified together. Nothing in the
+     * cache is touched if the transaction rolls back.
+     *
+     * @param session The JPA session to use.
+     * @param cls     The entity class.
+     * @param where   The where clause. (An empty string means all rows.)
+     * @param params  The parameters for the where clause.
+     *
+     * @return The number of rows deleted.
+     */
+    public static <E extends JpaBase<?>> int bulkDelete(@NotNull Session session, @NotNull Class<E> cls, @NotNull String where, @NotNull Map<String, Object> params) {
+        String     factory = factoryOf(session);
+        List<List> keys    = getIds(session, cls, where, params);
+        int        count   = createUpdate(session, String.format("delete %s %s", getFromClause(cls), getWhereClause(where)), params).executeUpdate();
+
+        QueryCache.invalidate(session, Set.of(cls));
+        CacheInvalidation.publish(session, cls, keys);
+        ReadRouting.pin();
+
+        afterCommit(session, () -> {
+            OffHeapCache.invalidate(cls);
+            List<E> cached = locked(() -> keys.stream().map(k -> getCached(factory, cls, k)).filter(Objects::nonNull).peek(Utils::removeFromCache).peek(Utils::removeFromDirtyList).collect(Collectors.toList()));
+
+            cached.forEach(e -> { synchronized(e.syncLock) { e.jpaState = DELETED; e.changedFields.clear(); } });
+            UpdateListeners.batch(null, () -> cached.forEach(JpaBase::fireUpdatedEvent));
+        });
+
+        return count;
+    }
+
+    /**
+     * Updates every row of the given entity class matching the where clause with a single HQL statement. Any matching entities in the entity cache
+     * are patched with the new values, or evicted if they have unsaved changes, once the transaction commits and their listeners are then notified
+     * together. Nothing in the cache is touched if the transaction rolls back.
+     *
+     * @param session The JPA session to use.
+     * @param cls     The entity class.
+     * @param values  The new values keyed by the name of the persisted field.
+     * @param where   The where clause. (An empty string means all rows.)
+     * @param params  The parameters for the where clause.
+     *
+     * @return The number of rows updated.
+     */
+    public static <E extends JpaBase<?>> int bulkUpdate(@NotNull Session session, @NotNull Class<E> cls, @NotNull Map<String, Object> values, @NotNull String where, @NotNull Map<String, Object> params) {
+        if(values.isEmpty()) return 0;
+
+        Map<String, Object> prms      = new TreeMap<>(params);
+        String              set       = getSetClause(cls, values, prms);
+        boolean             versioned = (getVersionField(cls) != null);
+
+        String     factory = factoryOf(session);
+        List<List> keys    = getIds(session, cls, where, params);
+        int        count   = createUpdate(session, String.format("update %s%s e set %s %s", (versioned ? "versioned " : ""), cls.getSimpleName(), set, getWhereClause(where)), prms).executeUpdate();
+
+        QueryCache.invalidate(session, Set.of(cls));
+        CacheInvalidation.publish(session, cls, keys);
+        ReadRouting.pin();
+
+        /*
+         * The new version of each row isn't known so versioned entities are evicted rather than patched. So are entities with unsaved changes so that
+         * those changes aren't overwritten. The cache lock is only taken inside each entity's own lock, the same order saveChanges() uses.
+         */
+        afterCommit(session, () -> {
+            OffHeapCache.invalidate(cls);
+            List<E> cached = locked(() -> keys.stream().map(k -> getCached(factory, cls, k)).filter(Objects::nonNull).collect(Collectors.toList()));
+
+            cached.forEach(e -> {
+                synchronized(e.syncLock) {
+                    if(versioned || (e.jpaState != CURRENT) || !e.changedFields.isEmpty()) doLocked(() -> removeFromCache(e));
+                    else e.patchPersistedFields(values);
+                }
+            });
+            UpdateListeners.batch(null, () -> cached.forEach(JpaBase::fireUpdatedEvent));
+        });
+
+        return count;
+    }
+
+    /**
+     * Empties the entity cache, including any classes pinned by {@link EntityPreloader} or {@link EntitySnapshot}, along with the off-heap tier and the
+     * query cache. Entities waiting to be saved stay on the dirty list.
+     */
+    public static void clearCache() {
+        doLocked(() -> {
+            ENTITY_CACHE.clear();
+            LONG_CACHE.clear();
+            PINNED.clear();
+            OffHeapCache.clear();
+        });
+        QueryCache.clear();
+    }
+
+    /**
+     * Counts the rows of the given entity class matching the where clause without loading any of them.
+     *
+     * @param session The JPA session to use.
+     * @param cls     The entity class.
+     * @param where   The where clause. (An empty string means all rows.)
+     * @param params  The parameters for the where clause.
+     *
+     * @return The number of matching rows.
+     */
+    public static long count(@NotNull Session session, @NotNull Class<?> cls, @NotNull String where, @NotNull Map<String, Object> params) {
+        return withQueryGet(session, Long.class, String.format("select count(e) %s %s", getFromClause(cls), getWhereClause(where)), params, 0, 1, (s, q) -> q.getSingleResult());
+    }
+
+    /**
+     * Returns true if at least one row of the given entity class matches the where clause. At most one row is read and no entity is loaded.
+     *
+     * @param session The JPA session to use.
+     * @param cls     The entity class.
+     * @param where   The where clause. (An empty string means all rows.)
+     * @param params  The parameters for the where clause.
+     *
+     * @return true if a matching row exists.
+     */
+    public static boolean exists(@NotNull Session session, @NotNull Class<?> cls, @NotNull String where, @NotNull Map<String, Object> params) {
+        return withQueryGet(session, Integer.class, String.format("select 1 %s %s", getFromClause(cls), getWhereClause(where)), params, 0, 1, (s, q) -> !q.getResultList().isEmpty());
+    }
+
     public static @NotNull String getFieldGetterName(@NotNull Field f) {
         return String.format("get%s", Text.capitalize(f.getName()));
     }
 
+    public static @NotNull RefreshPolicy getRefreshPolicy() {
+        return refreshPolicy;
+    }
+
+    public static @NotNull RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
     public static boolean isJpaBaseField(@NotNull Field f) {
         return JpaBase.class.isAssignableFrom(f.getType());
     }
@@ -93,26 +246,76 @@ public class Utils {
      */
     public static void saveAll(@NotNull Session session) {
         doLocked(() -> {
-            Map<JpaState, List<JpaBase<?>>> m = DIRTY_LIST.stream().collect(Collectors.groupingBy(e -> e.jpaState));
+            save(session, DIRTY_LIST);
+            takeDirtyList();
+        });
+    }
+
+    /**
+     * Write all NEW and DIRTY entities to, and remove all DELETED entities from, the persistent store using several threads. The entities are split
+     * into groups that are not connected to each other through their to-one references and each group is saved in its own session and transaction.
+     * If a group fails then its entities are put back into the state they were in before and left for the next save. Entities should not be
+     * modified until this method returns.
+     *
+     * @param threads The number of threads (and so sessions) to use.
+     *
+     * @return The report of the results for each group.
+     */
+    public static @NotNull SaveReport saveAllParallel(int threads) {
+        long                   started    = System.nanoTime();
+        List<JpaBase<?>>       claimed    = locked(Utils::takeDirtyList);
+        List<List<JpaBase<?>>> partitions = partition(claimed);
+        List<Future<SaveReport.Partition>> futures;
 
-            Null.doIfNotNull(m.get(NEW), l -> l.forEach(e -> saveNew(session, e)));
-            Null.doIfNotNull(m.get(DIRTY), l -> l.stream().peek(session::merge).forEach(e -> e.jpaState = CURRENT));
-            Null.doIfNotNull(m.get(DELETED), l -> l.stream().peek(session::remove).forEach(Utils::removeFromCache));
+        try(ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, partitions.size())))) {
+            futures = Streams.listStream(partitions).map(p -> executor.submit(() -> savePartition(p.index, p.item))).collect(Collectors.toList());
+        }
 
-            session.flush();
+        return new SaveReport(futures.stream().map(Future::resultNow).collect(Collectors.toList()), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
 
-            Null.doIfNotNull(m.get(NEW), l -> l.stream().peek(session::refresh).peek(Utils::addToCache).forEach(JpaBase::fireUpdatedEvent));
-            Null.doIfNotNull(m.get(DIRTY), l -> l.stream().peek(session::refresh).forEach(JpaBase::fireUpdatedEvent));
-            Null.doIfNotNull(m.get(DELETED), l -> l.forEach(JpaBase::fireUpdatedEvent));
+    /**
+     * Sets when entities are re-read from the database after they have been saved. The default is {@link RefreshPolicy#ALWAYS}.
+     *
+     * @param policy The refresh policy.
+     */
+    public static void setRefreshPolicy(@NotNull RefreshPolicy policy) {
+        refreshPolicy = policy;
+    }
 
-            DIRTY_LIST.clear();
-        });
+    /**
+     * Sets how transactions that fail with a transient error, such as a deadlock or a lock timeout, are retried by {@link #withSessionGet(SessionFunction)}
+     * and the other methods that open their own session. The default is {@link RetryPolicy#NONE}. Nested sessions are never retried on their own;
+     * only the outermost one is.
+     *
+     * @param policy The retry policy.
+     */
+    public static void setRetryPolicy(@NotNull RetryPolicy policy) {
+        retryPolicy = policy;
     }
 
     public static <E extends JpaBase<E>> Stream<E> stream(@NotNull Session session, @NotNull Class<E> cls, @NotNull String ql, @NotNull Map<String, Object> params, int startingRow, int maxRows) {
+        return stream(session, cls, ql, params, startingRow, maxRows, FetchPlan.forClass(cls));
+    }
+
+    /**
+     * Streams the entities returned by the query. If the query starts with "from" or "where" then only the IDs are selected and entities not already
+     * in the entity cache are loaded {@link FetchPlan#getBatchSize()} at a time using the fetch plan.
+     *
+     * @param session     The JPA session to use.
+     * @param cls         The entity class.
+     * @param ql          The query.
+     * @param params      The parameters for the query.
+     * @param startingRow The first row to return.
+     * @param maxRows     The maximum number of rows to return. (zero means all rows)
+     * @param plan        The associations to load with the entities.
+     *
+     * @return The stream of entities.
+     */
+    public static <E extends JpaBase<E>> Stream<E> stream(@NotNull Session session, @NotNull Class<E> cls, @NotNull String ql, @NotNull Map<String, Object> params, int startingRow, int maxRows, @NotNull FetchPlan plan) {
         if(Text.startsWithIgnoreCase(ql, "where")) ql = getFromClause(cls) + " " + ql;
-        if(Text.startsWithIgnoreCase(ql, "from")) return fetchFromCache(session, cls, ql, params, startingRow, maxRows);
-        return withQueryGet(session, cls, ql, params, startingRow, maxRows, (s, q) -> q.getResultStream()).peek(Utils::initialize).map(e -> locked(() -> replaceWithCached(e)));
+        if(Text.startsWithIgnoreCase(ql, "from")) return fetchFromCache(session, cls, ql, params, startingRow, maxRows, plan);
+        return withQueryGet(session, cls, ql, params, startingRow, maxRows, (s, q) -> plan.apply(s, cls, q).getResultStream()).peek(Utils::initialize).map(e -> locked(() -> replaceWithCached(session, e)));
     }
 
     /**
@@ -133,6 +336,39 @@ public class Utils {
                 : withQueryGet(session, cls, ql, prms, startRow, maxRows, (s, q) -> q.getResultStream()));
     }
 
+    /**
+     * Releases the entities of a class pinned by {@link EntityPreloader} or {@link EntitySnapshot} so that the garbage collector can reclaim the ones
+     * that are no longer in use. They stay in the cache until then.
+     *
+     * @param cls The entity class.
+     */
+    public static void unpinCache(@NotNull Class<?> cls) {
+        doLocked(() -> {
+            if(PINNED.remove(cls)) {
+                ENTITY_CACHE.forEach((r, m) -> { if(r.cls == cls) m.replaceAll((k, w) -> opt(w.get()).map(e -> (WeakReference<JpaBase<?>>)new CacheRef(e, false)).orElse(w)); });
+                LONG_CACHE.forEach((r, m) -> { if(r.cls == cls) m.replaceAll(w -> opt(w.get()).map(e -> (WeakReference<JpaBase<?>>)new CacheRef(e, false)).orElse(w)); });
+            }
+        });
+    }
+
+    /**
+     * Inserts the entities or, if rows with the same {@link com.projectgalen.lib.jpa.utils.annotations.UpsertKey} (or ID) already exist, updates them,
+     * using the database's native insert-on-conflict or merge statement in batches. No duplicate-key error is raised and nothing is rolled back.
+     * Afterward the entities are CURRENT. If the cache already held an entity without unsaved changes for one of the rows then it is returned in
+     * place of the given entity. The entity cache is only updated once the transaction commits. An entity that is already cached but has unsaved
+     * changes is left alone, so saving it later fails with a version conflict instead of overwriting the upserted row.
+     *
+     * @param session   The JPA session to use.
+     * @param cls       The entity class.
+     * @param entities  The entities.
+     * @param batchSize The number of rows sent to the database at a time.
+     *
+     * @return The cached instance of each entity in the same order.
+     */
+    public static <E extends JpaBase<?>> @NotNull List<E> upsert(@NotNull Session session, @NotNull Class<E> cls, @NotNull Collection<E> entities, int batchSize) {
+        return Upsert.get(session, cls).execute(session, new ArrayList<>(entities), batchSize);
+    }
+
     public static <E> void withQueryDo(@NotNull Session session, @NotNull Class<E> cls, @NotNull String ql, @NotNull Map<String, Object> params, int startingRow, int maxRows, @NotNull QueryConsumer<E> consumer) {
         consumer.accept(session, createQuery(session, cls, ql, params, startingRow, maxRows));
     }
@@ -141,25 +377,65 @@ public class Utils {
         return function.apply(session, createQuery(session, cls, ql, params, startingRow, maxRows));
     }
 
+    public static <R> R withReadSessionGet(@NotNull SessionFunction<R> function) {
+        return withReadSessionGet(SessionFactories.DEFAULT, function);
+    }
+
+    /**
+     * Runs the function in a new read-only session. If replicas have been set for the named factory in {@link ReadRouting} then the session is opened
+     * from one of them, otherwise it is opened from the named factory itself. The function must not make any changes.
+     *
+     * @param factoryName The name of the primary factory.
+     * @param function    The function.
+     *
+     * @return The value returned by the function.
+     */
+    public static <R> R withReadSessionGet(@NotNull String factoryName, @NotNull SessionFunction<R> function) {
+        return ReadRouting.withReadSessionGet(factoryName, function);
+    }
+
     public static void withSessionDo(@NotNull SessionConsumer executable) {
         withSessionGet(executable);
     }
 
+    public static void withSessionDo(@NotNull String factoryName, @NotNull SessionConsumer executable) {
+        withSessionGet(factoryName, executable);
+    }
+
     public static <R> R withSessionGet(@NotNull SessionFunction<R> consumer) {
-        try(Session session = HibernateSessionFactory.sessionFactory.openSession()) {
-            Transaction tx = null;
-            try {
-                tx = session.beginTransaction();
-                R val = consumer.apply(session);
-                session.flush();
-                tx.commit();
-                return val;
+        return withSessionGet(SessionFactories.DEFAULT, consumer);
+    }
+
+    /**
+     * Runs the function in a new session, and transaction, opened from the named {@link SessionFactory}.
+     *
+     * @param factoryName The name the factory was registered under in {@link SessionFactories}.
+     * @param consumer    The function.
+     *
+     * @return The value returned by the function.
+     */
+    public static <R> R withSessionGet(@NotNull String factoryName, @NotNull SessionFunction<R> consumer) {
+        return withSessionGet(SessionFactories.get(factoryName), false, consumer);
+    }
+
+    /**
+     * Groups the elements of a stream into lists of up to the given size without reading further ahead than the list being built.
+     */
+    private static <T> @NotNull Stream<List<T>> chunked(@NotNull Stream<T> stream, int size) {
+        Iterator<T>       it     = stream.iterator();
+        Iterator<List<T>> chunks = new Iterator<>() {
+            public @Override boolean hasNext() {
+                return it.hasNext();
             }
-            catch(Exception e) {
-                if(tx != null) tx.rollback();
-                throw new DaoException(e);
+
+            public @Override List<T> next() {
+                if(!it.hasNext()) throw new NoSuchElementException();
+                List<T> chunk = new ArrayList<>(size);
+                while((chunk.size() < size) && it.hasNext()) chunk.add(it.next());
+                return chunk;
             }
-        }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(chunks, Spliterator.ORDERED), false).onClose(stream::close);
     }
 
     private static <E> TypedQuery<E> createQuery(@NotNull Session session, @NotNull Class<E> cls, @NotNull String ql, @NotNull Map<String, Object> params, int startingRow, int maxRows) {
@@ -170,30 +446,64 @@ public class Utils {
         return query;
     }
 
-    private static <E extends JpaBase<?>> @NotNull Stream<E> fetchFromCache(@NotNull Session session, @NotNull Class<E> cls, @NotNull String ql, @NotNull Map<String, Object> params, int startingRow, int maxRows) {
+    private static @NotNull Query createUpdate(@NotNull Session session, @NotNull String ql, @NotNull Map<String, Object> params) {
+        Query query = session.createQuery(ql);
+        params.forEach(query::setParameter);
+        return query;
+    }
+
+    private static <E extends JpaBase<?>> @NotNull Stream<E> fetchFromCache(@NotNull Session session, @NotNull Class<E> cls, @NotNull String ql, @NotNull Map<String, Object> params, int startingRow, int maxRows, @NotNull FetchPlan plan) {
         List<String> fields = getPkFieldNames(cls);
-        Stream<List> list   = withQueryGet(session, List.class, String.format("select new list(%s) %s", String.join(", ", fields), ql), params, startingRow, maxRows, (s, q) -> q.getResultStream());
-        return list.peek(Utils::initialize).map(idList -> fetchFromCache(session, cls, fields, idList));
+        String       idql   = String.format("select new list(%s) %s", String.join(", ", fields), ql);
+        Stream<List> ids    = (QueryCache.isEnabled()
+                               ? QueryCache.getIds(session, idql, params, startingRow, maxRows, () -> withQueryGet(session, List.class, idql, params, startingRow, maxRows, (s, q) -> q.getResultList())).stream()
+                               : withQueryGet(session, List.class, idql, params, startingRow, maxRows, (s, q) -> q.getResultStream()));
+
+        return chunked(ids, plan.getBatchSize()).flatMap(chunk -> fetchByIds(session, cls, chunk, plan).stream()).filter(Objects::nonNull);
     }
 
     private static <E extends JpaBase<?>> @Nullable E fetchFromCache(@NotNull Session session, @NotNull Class<E> cls, @NotNull List<String> fields, @NotNull List idList) {
         if(fields.size() != idList.size()) throw new DaoException(msgs.format("msg.err.fields_values_count_mismatch", fields.size(), idList.size()));
-        String pkey = ((List<Object>)idList).stream().map(o -> Objects.toString(o, NULL_PK_TAG)).collect(Collectors.joining("][", String.format("%s[", cls.getSimpleName()), "]"));
-        return opt(locked(() -> getCached(cls, pkey))).orElseGet(() -> fetchFromDatabase(session, cls, fields, idList));
+        return opt(locked(() -> getCached(factoryOf(session), cls, idList))).orElseGet(() -> fetchFromDatabase(session, cls, fields, List.of(idList), FetchPlan.forClass(cls)).stream().findFirst().orElse(null));
+    }
+
+    private static <E extends JpaBase<?>> @NotNull List<E> fetchFromDatabase(@NotNull Session session, @NotNull Class<E> cls, @NotNull List<String> fields, @NotNull List<List> ids, @NotNull FetchPlan plan) {
+        Map<String, Object> prms = new HashMap<>();
+        String              ql   = getFromClause(cls) + getPkWhereClause(fields, ids, prms);
+        List<E>             rows = withQueryGet(session, cls, ql, prms, 0, 0, (s, q) -> plan.apply(s, cls, q).getResultStream().peek(Utils::initialize).collect(Collectors.toList()));
+
+        /*
+         * The queries run without the cache lock. If another thread cached the same rows in the meantime then its instances are kept.
+         */
+        plan.batchFetch(session, cls, rows);
+        return locked(() -> rows.stream().map(e -> (E)replaceWithCached(session, e)).collect(Collectors.toList()));
     }
 
-    private static <E extends JpaBase<?>> @Nullable E fetchFromDatabase(@NotNull Session session, @NotNull Class<E> cls, @NotNull List<String> fields, @NotNull List ids) {
-        Map<String, Object> prms = Streams.listStream((List<Object>)ids).collect(Collectors.toMap(e -> String.format("v%d", e.index), e -> e.item));
-        String              ql   = getFromClause(cls) + getPkWhereClause(fields);
-        return locked(() -> withQueryGet(session, cls, ql, prms, 0, 1, (s, q) -> q.getResultStream().peek(Utils::initialize).peek(Utils::addToCache).findFirst().orElse(null)));
+    private static @NotNull JpaBase<?> findRoot(@NotNull Map<JpaBase<?>, JpaBase<?>> parents, @NotNull JpaBase<?> e) {
+        JpaBase<?> p = parents.get(e);
+        while(p != e) {
+            JpaBase<?> gp = parents.get(p);
+            parents.put(e, gp);
+            e = p;
+            p = gp;
+        }
+        return p;
     }
 
-    private static <E extends JpaBase<?>> E getCached(@NotNull Class<E> cls, @NotNull String pkey) {
-        return Null.getIfNotNull(ENTITY_CACHE.get(cls), m -> (E)Null.getIfNotNull(m.get(pkey), Reference::get));
+    private static <E extends JpaBase<?>> E getCached(@NotNull String factory, @NotNull Class<E> cls, @NotNull String pkey) {
+        E e = Null.getIfNotNull(ENTITY_CACHE.get(new Region(factory, cls)), m -> (E)Null.getIfNotNull(m.get(pkey), Reference::get));
+        return (((e == null) && OffHeapCache.isEnabled(cls)) ? (E)OffHeapCache.restore(factory, cls, pkey) : e);
     }
 
-    private static String getFromClause(@NotNull Class<?> cls) {
-        return String.format("from %s e", cls.getSimpleName());
+    private static <E extends JpaBase<?>> E getCached(@NotNull String factory, @NotNull Class<E> cls, long id) {
+        LongRefMap m = LONG_CACHE.get(new Region(factory, cls));
+        E          e = ((m == null) ? null : (E)Null.getIfNotNull(m.get(id), Reference::get));
+        return (((e == null) && OffHeapCache.isEnabled(cls)) ? (E)OffHeapCache.restore(factory, cls, getPKey(cls, List.of(id))) : e);
+    }
+
+    private static <E extends JpaBase<?>> @NotNull List<List> getIds(@NotNull Session session, @NotNull Class<E> cls, @NotNull String where, @NotNull Map<String, Object> params) {
+        String ql = String.format("select new list(%s) %s %s", getPkFieldNames(cls).stream().map(f -> "e." + f).collect(Collectors.joining(", ")), getFromClause(cls), getWhereClause(where));
+        return withQueryGet(session, List.class, ql, params, 0, 0, (s, q) -> q.getResultList());
     }
 
     private static <E extends JpaBase<?>> @NotNull List<String> getPkFieldNames(@NotNull Class<E> cls) {
@@ -204,54 +514,562 @@ public class Utils {
         return Streams.listStream(fields).map(e -> String.format("(e.%s = :v%d)", e.item, e.index)).collect(Collectors.joining(" and ", " where ", ""));
     }
 
-    private static void initialize(Object entity) {
-        if(!Hibernate.isInitialized(entity)) Hibernate.initialize(entity);
+    private static @NotNull String getPkWhereClause(@NotNull List<String> fields, @NotNull List<List> ids, @NotNull Map<String, Object> params) {
+        if(fields.size() == 1) {
+            params.put("v0", ids.stream().map(idList -> idList.get(0)).collect(Collectors.toList()));
+            return String.format(" where e.%s in (:v0)", fields.get(0));
+        }
+        return Streams.listStream(ids).map(r -> Streams.listStream(fields).map(f -> {
+            String name = String.format("v%d_%d", r.index, f.index);
+            params.put(name, r.item.get(f.index));
+            return String.format("(e.%s = :%s)", f.item, name);
+        }).collect(Collectors.joining(" and ", "(", ")"))).collect(Collectors.joining(" or ", " where ", ""));
+    }
+
+    private static @NotNull String getSetClause(@NotNull Class<?> cls, @NotNull Map<String, Object> values, @NotNull Map<String, Object> params) {
+        List<String> fields = new ArrayList<>(values.keySet());
+        Streams.listStream(fields).forEach(e -> params.put(String.format("pgSet%d", e.index), values.get(e.item)));
+        return Streams.listStream(fields).map(e -> String.format("e.%s = :pgSet%d", getPersistedField(cls, e.item).getName(), e.index)).collect(Collectors.joining(", "));
+    }
+
+    private static boolean hasGeneratedFields(@NotNull Class<?> cls, boolean insert) {
+        if(getAnnotatedFields(cls, Generated.class, Formula.class).findAny().isPresent()) return true;
+        return (insert && getAnnotatedFields(cls, Column.class).anyMatch(f -> !f.getAnnotation(Column.class).insertable()));
     }
 
     private static boolean isJpaClass(@NotNull Class<?> cls) {
         return JpaBase.class.isAssignableFrom(cls);
     }
 
+    /**
+     * Splits the entities into groups where no entity in one group references an entity in another group. NEW entities that aren't in the list but
+     * are reachable through other NEW entities are inserted along with them (see {@link SavePlan#getInsertOrder(Collection)}), so they join the
+     * groups of every entity that reaches them. Otherwise two groups could both insert the same entity.
+     */
+    private static @NotNull List<List<JpaBase<?>>> partition(@NotNull List<JpaBase<?>> entities) {
+        Map<JpaBase<?>, JpaBase<?>>       parents = new IdentityHashMap<>();
+        Map<JpaBase<?>, List<JpaBase<?>>> groups  = new IdentityHashMap<>();
+        List<List<JpaBase<?>>>            list    = new ArrayList<>();
+        Deque<JpaBase<?>>                 todo    = new ArrayDeque<>(entities);
+
+        entities.forEach(e -> parents.put(e, e));
+        while(!todo.isEmpty()) {
+            JpaBase<?> e = todo.poll();
+            e.getToOneStream().filter(o -> (parents.containsKey(o) || (o.jpaState == NEW))).forEach(o -> {
+                if(parents.putIfAbsent(o, o) == null) todo.add(o);
+                parents.put(findRoot(parents, e), findRoot(parents, o));
+            });
+        }
+        entities.forEach(e -> groups.computeIfAbsent(findRoot(parents, e), r -> { List<JpaBase<?>> g = new ArrayList<>(); list.add(g); return g; }).add(e));
+        return list;
+    }
+
+    private static <E extends JpaBase<E>> E replaceWithCached(@NotNull String factory, @NotNull JpaBase<?> entity, boolean cache) {
+        E e = (E)getCached(factory, entity);
+        if(e != null) return e;
+        entity.factoryName = factory;
+        return (cache ? addToCache(entity) : (E)entity);
+    }
+
+    private static void save(@NotNull Session session, @NotNull List<JpaBase<?>> entities) {
+        entities.forEach(Utils::journal);
+
+        Map<JpaState, List<JpaBase<?>>> m       = entities.stream().collect(Collectors.groupingBy(e -> e.jpaState));
+        Map<JpaBase<?>, Object>         merged  = new IdentityHashMap<>();
+        List<JpaBase<?>>                inserts = SavePlan.getInsertOrder(entities);
+        List<JpaBase<?>>                dirty   = m.getOrDefault(DIRTY, List.of());
+        List<JpaBase<?>>                deleted = m.getOrDefault(DELETED, List.of());
+        /* The inserts can include NEW entities that weren't passed in but are referenced by ones that were. */
+        List<JpaBase<?>>                written = Stream.of(inserts, dirty, deleted).flatMap(List::stream).toList();
+
+        inserts.forEach(e -> saveNew(session, e));
+        dirty.forEach(e -> Null.doIfNotNull(saveDirty(session, e), c -> merged.put(e, c)));
+        deleted.forEach(session::remove);
+
+        session.flush();
+        merged.forEach(Utils::copyGenerated);
+        inserts.forEach(e -> refresh(session, e, NEW));
+        dirty.forEach(e -> refresh(session, e, DIRTY));
+
+        /*
+         * The entity cache and the listeners only hear about the changes once they are committed. If the transaction fails instead then the
+         * journal puts the entities back the way they were.
+         */
+        afterCommit(session, () -> {
+            doLocked(() -> {
+                inserts.forEach(Utils::addToCache);
+                deleted.forEach(Utils::removeFromCache);
+            });
+            UpdateListeners.batch(null, () -> written.forEach(JpaBase::fireUpdatedEvent));
+        });
+
+        QueryCache.invalidate(session, written.stream().map(Object::getClass).collect(Collectors.toSet()));
+        CacheInvalidation.publish(session, written);
+        ReadRouting.pin();
+    }
+
     private static void saveNew(@NotNull Session session, @NotNull JpaBase<?> entity) {
-        entity.getToOneStream().filter(e -> (e.jpaState == NEW)).forEach(e -> saveNew(session, e));
+        journal(entity);
+        entity.factoryName = factoryOf(session);
         session.persist(entity);
         entity.jpaState = CURRENT;
     }
 
+    private static @NotNull SaveReport.Partition savePartition(int index, @NotNull List<JpaBase<?>> entities) {
+        long started = System.nanoTime();
+
+        try {
+            withSessionDo(session -> save(session, entities));
+            return new SaveReport.Partition(index, entities.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), null);
+        }
+        catch(Exception e) {
+            doLocked(() -> entities.stream().filter(o -> (o.jpaState != CURRENT)).forEach(Utils::addToDirtyList));
+            return new SaveReport.Partition(index, entities.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), e);
+        }
+    }
+
+    /**
+     * Empties the dirty list and returns what was on it. Must be called while holding the lock.
+     */
+    private static @NotNull List<JpaBase<?>> takeDirtyList() {
+        List<JpaBase<?>> list = new ArrayList<>(DIRTY_LIST);
+        list.forEach(e -> e.listed = false);
+        DIRTY_LIST.clear();
+        return list;
+    }
+
     static <E extends JpaBase<?>> @NotNull E addToCache(@NotNull JpaBase<?> e) {
-        if(U.isObjIn(e.getJpaState(), CURRENT, DIRTY)) ENTITY_CACHE.computeIfAbsent(e.getClass(), k -> new TreeMap<>()).put(e.getPKey(), new WeakReference<>(e));
+        if(U.isObjIn(e.getJpaState(), CURRENT, DIRTY)) {
+            Class<?> cls = e.getClass();
+            CacheRef ref = new CacheRef(e, PINNED.contains(cls));
+            long     id  = getNumericId(e);
+            if(id == NO_NUMERIC_ID) ENTITY_CACHE.computeIfAbsent(Region.of(e), k -> { CacheInvalidation.classId(k.cls); return new TreeMap<>(); }).put(e.getPKey(), ref);
+            else LONG_CACHE.computeIfAbsent(Region.of(e), k -> { CacheInvalidation.classId(k.cls); return new LongRefMap(); }).put(id, ref);
+            if(OffHeapCache.isEnabled(cls)) OffHeapCache.store(e, false);
+        }
         return (E)e;
     }
 
     static void addToDirtyList(@NotNull JpaBase<?> e) {
-        if(DIRTY_LIST.stream().noneMatch(o -> (e == o))) DIRTY_LIST.add(e);
+        if(!e.listed) {
+            e.listed = true;
+            DIRTY_LIST.add(e);
+        }
+    }
+
+    /**
+     * Runs the task once the session's transaction has committed, or straight away if there is no session or its transaction isn't active. Nothing
+     * is run if the transaction rolls back.
+     *
+     * @param session The JPA session, if any.
+     * @param task    The task.
+     */
+    static void afterCommit(@Nullable Session session, @NotNull Runnable task) {
+        if((session == null) || !session.getTransaction().isActive()) task.run();
+        else session.getTransaction().registerSynchronization(new Synchronization() {
+            public @Override void afterCompletion(int status) {
+                if(status == Status.STATUS_COMMITTED) task.run();
+            }
+
+            public @Override void beforeCompletion() { }
+        });
+    }
+
+    /**
+     * Copies the generated ID and version values from the managed copy returned by {@link Session#merge(Object)} back to the entity after a flush.
+     *
+     * @param entity  The entity that was merged.
+     * @param managed The managed copy.
+     */
+    static void copyGenerated(@NotNull JpaBase<?> entity, @NotNull Object managed) {
+        getAnnotatedFields(entity.getClass(), Id.class, Version.class).forEach(f -> Reflection.setFieldValue(f, entity, Reflection.getFieldValue(f, managed)));
+        entity.changedFields.clear();
     }
 
     static void doLocked(@NotNull Runnable runnable) {
         Locks.doWithLock(LOCK, runnable);
     }
 
+    /**
+     * Removes the entity with the given key from the entity cache and the off-heap tier of every session factory, since an invalidation message
+     * doesn't say which database it came from. Must be called while holding the cache lock.
+     *
+     * @param cls  The entity class.
+     * @param id   The numeric ID if the class has one.
+     * @param pkey The primary key string.
+     *
+     * @return The entities that were removed from the entity cache.
+     */
+    static @NotNull List<JpaBase<?>> evict(@NotNull Class<?> cls, @Nullable Long id, @NotNull String pkey) {
+        List<JpaBase<?>> evicted = new ArrayList<>();
+
+        for(String factory : SessionFactories.getNames()) {
+            Region     r = new Region(factory, cls);
+            LongRefMap m = LONG_CACHE.get(r);
+            JpaBase<?> e = ((id == null) ? Null.getIfNotNull(ENTITY_CACHE.get(r), c -> Null.getIfNotNull(c.get(pkey), Reference::get)) : ((m == null) ? null : Null.getIfNotNull(m.get(id), Reference::get)));
+
+            if(e == null) {
+                OffHeapCache.remove(factory, cls, pkey);
+            }
+            else {
+                removeFromCache(e);
+                evicted.add(e);
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Returns the name of the session factory whose part of the entity cache entities read through the session belong in. For a session opened
+     * from a replica this is the name of its primary.
+     */
+    static @NotNull String factoryOf(@NotNull Session session) {
+        return opt(ReadRouting.getPrimary(session)).orElseGet(() -> SessionFactories.getName(session.getSessionFactory()));
+    }
+
+    static <E extends JpaBase<?>> @Nullable E fetchById(@NotNull Session session, @NotNull Class<E> cls, @NotNull List<Object> ids) {
+        return fetchFromCache(session, cls, getPkFieldNames(cls), ids);
+    }
+
+    /**
+     * Returns the entities with the given IDs, taking them from the entity cache where possible and loading the rest in batches.
+     *
+     * @param session The JPA session to use.
+     * @param cls     The entity class.
+     * @param ids     The ID values of each entity in the order of the {@link Id} fields.
+     * @param plan    The fetch plan used for the entities that aren't cached.
+     *
+     * @return The entities in the same order as the IDs, with null in place of any that don't exist.
+     */
+    static <E extends JpaBase<?>> @NotNull List<E> fetchByIds(@NotNull Session session, @NotNull Class<E> cls, @NotNull List<List> ids, @NotNull FetchPlan plan) {
+        String         factory = factoryOf(session);
+        List<String>   fields  = getPkFieldNames(cls);
+        List<E>        found   = new ArrayList<>(Collections.nCopies(ids.size(), null));
+        List<List>     misses  = new ArrayList<>();
+        Map<String, E> loaded  = new HashMap<>();
+
+        ids.forEach(idList -> { if(fields.size() != idList.size()) throw new DaoException(msgs.format("msg.err.fields_values_count_mismatch", fields.size(), idList.size())); });
+        doLocked(() -> Streams.listStream(ids).forEach(r -> found.set(r.index, getCached(factory, cls, r.item))));
+        Streams.listStream(found).filter(r -> (r.item == null)).forEach(r -> misses.add(ids.get(r.index)));
+
+        for(int i = 0; i < misses.size(); i += plan.getBatchSize()) {
+            fetchFromDatabase(session, cls, fields, misses.subList(i, Math.min(misses.size(), i + plan.getBatchSize())), plan).forEach(e -> loaded.put(e.getPKey(), e));
+        }
+
+        if(!loaded.isEmpty()) Streams.listStream(found).filter(r -> (r.item == null)).toList().forEach(r -> found.set(r.index, loaded.get(getPKey(cls, ids.get(r.index)))));
+        return found;
+    }
+
+    /**
+     * Looks up an entity read from the given session factory by the values of its ID fields, skipping the string key for classes with a single
+     * numeric ID. Must be called while holding the lock.
+     */
+    static <E extends JpaBase<?>> E getCached(@NotNull String factory, @NotNull Class<E> cls, @NotNull List idList) {
+        if((idList.size() == 1) && (idList.get(0) instanceof Number n) && (n.longValue() != NO_NUMERIC_ID) && (getNumericIdField(cls) != null)) return getCached(factory, cls, n.longValue());
+        return getCached(factory, cls, getPKey(cls, idList));
+    }
+
+    /**
+     * Returns the cached instance of an entity's row, read from the given session factory, without caching the entity if there isn't one. Must be
+     * called while holding the lock.
+     */
+    static <E extends JpaBase<?>> @Nullable E getCached(@NotNull String factory, @NotNull E entity) {
+        long id = getNumericId(entity);
+        return (E)((id == NO_NUMERIC_ID) ? getCached(factory, entity.getClass(), entity.getPKey()) : getCached(factory, entity.getClass(), id));
+    }
+
+    static @NotNull String getFromClause(@NotNull Class<?> cls) {
+        return String.format("from %s e", cls.getSimpleName());
+    }
+
+    /**
+     * Returns the ID of the entity if its class has a single numeric ID and the ID has been set, or {@link #NO_NUMERIC_ID} if not. The ID is returned
+     * as a primitive because this is called on every cache update, and primitive ID fields are read without boxing.
+     */
+    static long getNumericId(@NotNull JpaBase<?> e) {
+        Field f = getNumericIdField(e.getClass());
+        if(f == null) return NO_NUMERIC_ID;
+        try {
+            if(f.getType().isPrimitive()) return f.getLong(e);
+            Object id = f.get(e);
+            return ((id == null) ? NO_NUMERIC_ID : ((Number)id).longValue());
+        }
+        catch(IllegalAccessException ex) {
+            throw new DaoException(ex);
+        }
+    }
+
+    static @Nullable Field getNumericIdField(@NotNull Class<?> cls) {
+        return NUMERIC_IDS.computeIfAbsent(cls, c -> {
+            List<Field> fields = getAnnotatedFields(c, Id.class).collect(Collectors.toList());
+            if((fields.size() != 1) || !U.isObjIn(fields.get(0).getType(), long.class, Long.class, int.class, Integer.class, short.class, Short.class)) return Optional.empty();
+            return (fields.get(0).trySetAccessible() ? Optional.of(fields.get(0)) : Optional.empty());
+        }).orElse(null);
+    }
+
+    static @NotNull String getPKey(@NotNull Class<?> cls, @NotNull List idList) {
+        return ((List<Object>)idList).stream().map(o -> Objects.toString(o, NULL_PK_TAG)).collect(Collectors.joining("][", String.format("%s[", cls.getSimpleName()), "]"));
+    }
+
+    static @NotNull Field getPersistedField(@NotNull Class<?> cls, @NotNull String fieldName) {
+        return getAnnotatedFields(cls, Column.class, ManyToOne.class, OneToOne.class)
+                .filter(f -> f.getName().equals(fieldName))
+                .findFirst()
+                .orElseThrow(() -> new DaoException(msgs.format("msg.err.not_persisted_field", fieldName, cls.getSimpleName())));
+    }
+
+    static @Nullable Field getVersionField(@NotNull Class<?> cls) {
+        return getAnnotatedFields(cls, Version.class).findFirst().orElse(null);
+    }
+
+    static @Nullable Field getWatermarkField(@NotNull Class<?> cls) {
+        return getAnnotatedFields(cls, Watermark.class).findFirst().orElseGet(() -> getAnnotatedFields(cls, Version.class).findFirst().orElse(null));
+    }
+
+    static @NotNull String getWhereClause(@NotNull String where) {
+        String w = where.trim();
+        return ((w.isEmpty() || Text.startsWithIgnoreCase(w, "where")) ? w : ("where " + w));
+    }
+
+    static void initialize(Object entity) {
+        if(!Hibernate.isInitialized(entity)) Hibernate.initialize(entity);
+    }
+
+    /**
+     * Records the state of the entity, if it has not already been recorded, so that it can be restored if the current transaction fails.
+     *
+     * @param entity The entity that is about to be saved.
+     */
+    static void journal(@NotNull JpaBase<?> entity) {
+        Null.doIfNotNull(JOURNAL.get(), j -> j.computeIfAbsent(entity, EntityState::new));
+    }
+
     static <E> E locked(@NotNull Supplier<E> supplier) {
         return Locks.getWithLock(LOCK, supplier);
     }
 
+    /**
+     * Returns true if an entity of the given class needs to be refreshed after being saved. With {@link RefreshPolicy#GENERATED_ONLY} that is only
+     * the case if the class has fields generated or computed by the database.
+     *
+     * @param cls   The entity class.
+     * @param state The state the entity was in before it was saved.
+     *
+     * @return true if the entity should be refreshed.
+     */
+    static boolean needsRefresh(@NotNull Class<?> cls, @NotNull JpaState state) {
+        if(refreshPolicy == RefreshPolicy.ALWAYS) return true;
+        return ((state == NEW) ? GEN_INSERT.computeIfAbsent(cls, c -> hasGeneratedFields(c, true)) : GEN_UPDATE.computeIfAbsent(cls, c -> hasGeneratedFields(c, false)));
+    }
+
+    static @NotNull Object nextVersion(@NotNull Field f, @Nullable Object version) {
+        Class<?> t = f.getType();/*@f0*/
+        if((t == int.class)   || (t == Integer.class)) return ((version == null) ? 0 : ((Integer)version + 1));
+        if((t == long.class)  || (t == Long.class))    return ((version == null) ? 0L : ((Long)version + 1L));
+        if((t == short.class) || (t == Short.class))   return ((version == null) ? (short)0 : (short)((Short)version + 1));
+        if(t == Timestamp.class)                       return new Timestamp(System.currentTimeMillis());
+        if(t == Instant.class)                         return Instant.now();
+        if(t == LocalDateTime.class)                   return LocalDateTime.now();
+        if(t == Date.class)                            return new Date();/*@f1*/
+        throw new DaoException(msgs.format("msg.err.not_supported", t.getName()));
+    }
+
+    static void pinCache(@NotNull Class<?> cls) {
+        if(PINNED.add(cls)) {
+            ENTITY_CACHE.forEach((r, m) -> {
+                if(r.cls != cls) return;
+                m.replaceAll((k, w) -> opt(w.get()).map(e -> (WeakReference<JpaBase<?>>)new CacheRef(e, true)).orElse(w));
+                m.values().removeIf(w -> Objects.isNull(w.get()));
+            });
+            LONG_CACHE.forEach((r, m) -> {
+                if(r.cls != cls) return;
+                m.replaceAll(w -> opt(w.get()).map(e -> (WeakReference<JpaBase<?>>)new CacheRef(e, true)).orElse(w));
+                m.removeIf(w -> Objects.isNull(w.get()));
+            });
+        }
+    }
+
+    /**
+     * Re-reads the entity after it has been saved if {@link #needsRefresh(Class, JpaState)} says so. Either way it now matches the database so the
+     * original values of its changed fields are forgotten.
+     */
+    static void refresh(@NotNull Session session, @NotNull JpaBase<?> entity, @NotNull JpaState state) {
+        if(needsRefresh(entity.getClass(), state)) session.refresh(entity);
+        entity.changedFields.clear();
+    }
+
     static void removeFromCache(@NotNull JpaBase<?> e) {
+        long                      id = getNumericId(e);
+        LongRefMap                lm = LONG_CACHE.get(Region.of(e));
+        WeakReference<JpaBase<?>> w  = (((id == NO_NUMERIC_ID) || (lm == null)) ? null : lm.get(id));
+
+        if((w != null) && (w.get() == e)) lm.remove(id);
+        else LONG_CACHE.values().forEach(m -> m.removeIf(o -> (o.get() == e)));
         ENTITY_CACHE.values().forEach(m -> m.values().removeIf(o -> (o.get() == e)));
+        OffHeapCache.remove(e);
     }
 
     static void removeFromDirtyList(JpaBase<?> e) {
-        DIRTY_LIST.removeIf(o -> (e == o));
+        if(e.listed) {
+            e.listed = false;
+            DIRTY_LIST.removeIf(o -> (e == o));
+        }
+    }
+
+    /**
+     * Returns the cached instance of an entity read from the given session factory, caching the entity if there isn't one. Must be called while
+     * holding the lock.
+     *
+     * @param factory The name of the session factory the entity was read from.
+     * @param entity  The entity.
+     *
+     * @return The cached instance.
+     */
+    static <E extends JpaBase<E>> E replaceWithCached(@NotNull String factory, @NotNull JpaBase<?> entity) {
+        return replaceWithCached(factory, entity, true);
+    }
+
+    /**
+     * Returns the cached instance of an entity read through the given session. An entity read from a replica may be behind the primary so, if there
+     * is no cached instance, it is returned without being cached and a later read from the primary caches its own copy. Must be called while holding
+     * the lock.
+     *
+     * @param session The JPA session the entity was read through.
+     * @param entity  The entity.
+     *
+     * @return The cached instance, or the entity itself if it was read from a replica and isn't cached.
+     */
+    static <E extends JpaBase<E>> E replaceWithCached(@NotNull Session session, @NotNull JpaBase<?> entity) {
+        return replaceWithCached(factoryOf(session), entity, !ReadRouting.isReplicaSession(session));
+    }
+
+    /**
+     * Writes a DIRTY entity to the persistent store. If the entity knows which of its persisted fields have changed then only those columns are
+     * updated, checking and incrementing the version if the entity has one, otherwise the whole entity is merged.
+     *
+     * @param session The JPA session to use.
+     * @param entity  The entity.
+     *
+     * @return The managed copy if the entity was merged or null if it was updated in place.
+     *
+     * @throws StaleEntityException if the row was changed or deleted by another transaction.
+     */
+    static @Nullable Object saveDirty(@NotNull Session session, @NotNull JpaBase<?> entity) {
+        Object managed = null;
+
+        if(entity.changedFields.isEmpty()) {
+            managed = session.merge(entity);
+        }
+        else {
+            Class<?>            cls    = entity.getClass();
+            List<Field>         ids    = getAnnotatedFields(cls, Id.class).collect(Collectors.toList());
+            Field               ver    = getVersionField(cls);
+            Map<String, Object> values = new TreeMap<>();
+            Map<String, Object> params = new TreeMap<>();
+
+            entity.changedFields.keySet().forEach(n -> values.put(n, Reflection.getFieldValue(getPersistedField(cls, n), entity)));
+            Streams.listStream(ids).forEach(e -> params.put(String.format("v%d", e.index), Reflection.getFieldValue(e.item, entity)));
+
+            String set   = getSetClause(cls, values, params);
+            String where = getPkWhereClause(ids.stream().map(Field::getName).collect(Collectors.toList()));
+            Object nver  = null;
+
+            if(ver != null) {
+                Object over = Reflection.getFieldValue(ver, entity);
+                nver = nextVersion(ver, over);
+                params.put("pgVersion", nver);
+                set = String.format("%s, e.%s = :pgVersion", set, ver.getName());
+                if(over == null) {
+                    where = String.format("%s and (e.%s is null)", where, ver.getName());
+                }
+                else {
+                    where = String.format("%s and (e.%s = :pgOldVersion)", where, ver.getName());
+                    params.put("pgOldVersion", over);
+                }
+            }
+
+            if(createUpdate(session, String.format("update %s e set %s%s", cls.getSimpleName(), set, where), params).executeUpdate() == 0) throw new StaleEntityException(entity);
+            if(ver != null) Reflection.setFieldValue(ver, entity, nver);
+        }
+
+        entity.changedFields.clear();
+        entity.jpaState = CURRENT;
+        return managed;
+    }
+
+    /**
+     * Saves an entity and every entity reachable from it through to-one references together, inserting the new ones in the order given by {@link
+     * SavePlan#getInsertOrder(Collection)}.
+     *
+     * @param session The JPA session to use.
+     * @param root    The entity to start from.
+     */
+    static void saveGraph(@NotNull Session session, @NotNull JpaBase<?> root) {
+        doLocked(() -> {
+            List<JpaBase<?>> list = SavePlan.getReachable(root).stream().filter(e -> (e.jpaState != CURRENT)).collect(Collectors.toList());
+            save(session, list);
+            list.forEach(Utils::removeFromDirtyList);
+        });
     }
 
-    static <E extends JpaBase<E>> E replaceWithCached(@NotNull JpaBase<?> entity) {
-        return opt((E)getCached(entity.getClass(), entity.getPKey())).orElseGet(() -> addToCache(entity));
+    /**
+     * Runs the function in a new session and transaction opened from the given factory. If the transaction fails then every entity recorded with
+     * {@link #journal(JpaBase)} is put back into the state it was in before, and if the failure was transient the transaction is tried again
+     * according to the current {@link RetryPolicy}.
+     */
+    static <R> R withSessionGet(@NotNull SessionFactory factory, boolean readOnly, @NotNull SessionFunction<R> consumer) {
+        Map<JpaBase<?>, EntityState> outer  = JOURNAL.get();
+        RetryPolicy                  policy = ((outer == null) ? retryPolicy : RetryPolicy.NONE);
+
+        policy.deposit();
+
+        for(int attempt = 1; ; attempt++) {
+            Map<JpaBase<?>, EntityState> journal = new IdentityHashMap<>();
+            JOURNAL.set(journal);
+            try(Session session = factory.openSession()) {
+                Transaction tx = null;
+                try {
+                    session.setDefaultReadOnly(readOnly);
+                    tx = session.beginTransaction();
+                    R val = consumer.apply(session);
+                    session.flush();
+                    tx.commit();
+                    return val;
+                }
+                catch(Exception e) {
+                    if(tx != null) tx.rollback();
+                    if(!journal.isEmpty()) doLocked(() -> journal.values().forEach(EntityState::restore));
+                    if(!(policy.shouldRetry(e, attempt) && policy.sleep(attempt))) throw new DaoException(e);
+                }
+            }
+            finally {
+                JOURNAL.set(outer);
+            }
+        }
     }
 
-    private static final class HibernateSessionFactory {
-        private static final SessionFactory sessionFactory = new Configuration().configure().buildSessionFactory();
+    /**
+     * The part of the entity cache holding the entities of one class read from one session factory.
+     */
+    private record Region(@NotNull String factory, @NotNull Class<?> cls) {
+        static @NotNull Region of(@NotNull JpaBase<?> e) {
+            return new Region(e.factoryName, e.getClass());
+        }
+    }
+
+    private static final class CacheRef extends WeakReference<JpaBase<?>> {
+        private final JpaBase<?> pinned;
+
+        public CacheRef(@NotNull JpaBase<?> referent, boolean pin) {
+            super(referent);
+            pinned = (pin ? referent : null);
+        }
     }
 
     static {
-        EXECUTOR.scheduleAtFixedRate(() -> doLocked(() -> ENTITY_CACHE.values().forEach(m -> m.values().removeIf(w -> Objects.isNull(w.get())))), 1, 1, TimeUnit.MINUTES);
+        EXECUTOR.scheduleAtFixedRate(() -> doLocked(() -> {
+            ENTITY_CACHE.values().forEach(m -> m.values().removeIf(w -> Objects.isNull(w.get())));
+            LONG_CACHE.values().forEach(m -> m.removeIf(w -> Objects.isNull(w.get())));
+        }), 1, 1, TimeUnit.MINUTES);
     }
 }
@@ -0,0 +1,37 @@
+package com.projectgalen.lib.jpa.utils.enums;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: RefreshPolicy.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+/**
+ * Controls when an entity is re-read from the database after it has been saved.
+ */
+public enum RefreshPolicy {
+    /**
+     * Always refresh NEW and DIRTY entities after they have been saved.
+     */
+    ALWAYS,
+    /**
+     * Take generated IDs and version numbers from the flush and only refresh entities that have columns computed by the database.
+     */
+    GENERATED_ONLY
+}
@@ -0,0 +1,54 @@
+package com.projectgalen.lib.jpa.utils.enums;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: SqlDialect.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+
+/**
+ * The databases that native SQL, such as upserts, can be generated for.
+ */
+public enum SqlDialect {
+    POSTGRESQL("postgres"), MYSQL("mysql", "mariadb"), H2("h2"), ORACLE("oracle"), SQLSERVER("microsoft sql server");
+
+    private final String[] productNames;
+
+    SqlDialect(String @NotNull ... productNames) {
+        this.productNames = productNames;
+    }
+
+    /**
+     * Returns the dialect for the product name reported by {@link java.sql.DatabaseMetaData#getDatabaseProductName()}.
+     *
+     * @param productName The database product name.
+     *
+     * @return The dialect or <code>null</code> if the database is not supported.
+     */
+    public static @Nullable SqlDialect forProductName(@NotNull String productName) {
+        String name = productName.toLowerCase(Locale.ROOT);
+        for(SqlDialect d : values()) for(String p : d.productNames) if(name.contains(p)) return d;
+        return null;
+    }
+}
@@ -0,0 +1,43 @@
+package com.projectgalen.lib.jpa.utils.errors;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: StaleEntityException.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.base.JpaBase;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Thrown when an update finds that the row for an entity was changed (its version no longer matches) or deleted by someone else.
+ */
+@SuppressWarnings("unused")
+public class StaleEntityException extends DaoException {
+    private final JpaBase<?> entity;
+
+    public StaleEntityException(@NotNull JpaBase<?> entity) {
+        super(msgs.format("msg.err.stale_entity", entity.getPKey()));
+        this.entity = entity;
+    }
+
+    public JpaBase<?> getEntity() {
+        return entity;
+    }
+}
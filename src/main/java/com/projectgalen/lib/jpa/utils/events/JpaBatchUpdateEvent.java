@@ -0,0 +1,50 @@
+package com.projectgalen.lib.jpa.utils.events;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: JpaBatchUpdateEvent.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import com.projectgalen.lib.jpa.utils.base.JpaBase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.EventObject;
+import java.util.List;
+
+/**
+ * Delivered to a {@link JpaBatchUpdateListener} with all the entities, matching its subscription, that were updated together. The source is the
+ * entity class that was subscribed to, or {@link JpaBase} for a subscription to every class.
+ */
+public class JpaBatchUpdateEvent extends EventObject {
+    private final List<JpaBase<?>> entities;
+
+    public JpaBatchUpdateEvent(@NotNull Class<?> source, @NotNull List<JpaBase<?>> entities) {
+        super(source);
+        this.entities = List.copyOf(entities);
+    }
+
+    public @NotNull List<JpaBase<?>> getEntities() {
+        return entities;
+    }
+
+    public @Override Class<?> getSource() {
+        return (Class<?>)super.getSource();
+    }
+}
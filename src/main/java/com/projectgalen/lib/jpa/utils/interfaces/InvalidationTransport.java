@@ -0,0 +1,53 @@
+package com.projectgalen.lib.jpa.utils.interfaces;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: InvalidationTransport.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Carries cache invalidation messages between the nodes sharing a database. See {@link com.projectgalen.lib.jpa.utils.base.CacheInvalidation}.
+ * Messages are opaque byte arrays and may be delivered to the sending node as well. A transport does not have to guarantee delivery.
+ */
+public interface InvalidationTransport extends Closeable {
+    /**
+     * Returns the largest message, in bytes, that can be sent in one call to {@link #send(byte[])}.
+     */
+    default int getMaxMessageSize() {
+        return 65536;
+    }
+
+    /**
+     * Starts receiving messages. The receiver may be called from any thread.
+     *
+     * @param receiver Called with each message received.
+     *
+     * @throws IOException if the transport could not be opened.
+     */
+    void open(@NotNull Consumer<byte[]> receiver) throws IOException;
+
+    void send(byte @NotNull [] message) throws IOException;
+}
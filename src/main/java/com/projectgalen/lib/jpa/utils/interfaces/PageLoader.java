@@ -0,0 +1,40 @@
+package com.projectgalen.lib.jpa.utils.interfaces;
+
+// ===========================================================================
+//     PROJECT: JPAUtils
+//    FILENAME: PageLoader.java
+//         IDE: IntelliJ IDEA
+//      AUTHOR: Galen Rhodes
+//        DATE: October 19, 2026
+//
+// Copyright © 2026 Project Galen. All rights reserved.
+//
+// Permission to use, copy, modify, and distribute this software for any
+// purpose with or without fee is hereby granted, provided that the above
+// copyright notice and this permission notice appear in all copies.
+//
+// THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+// WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+// SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+// WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+// ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+// IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+// ===========================================================================
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+@FunctionalInterface
+public interface PageLoader<T> {
+    /**
+     * Loads one page of rows.
+     *
+     * @param startingRow The first row of the page.
+     * @param maxRows     The page size.
+     *
+     * @return The rows. A page with fewer than <code>maxRows</code> rows is the last page.
+     */
+    @NotNull List<T> load(int startingRow, int maxRows);
+}